@@ -47,6 +47,17 @@ public interface FssMetaResolver {
     String resolveReadUrl(@RequestParam(value = "storageUrl", required = false) String storageUrl,
             @RequestParam("thumbnail") boolean thumbnail);
 
+    /**
+     * 根据内部存储地址集批量获取外部读取地址集，结果格式同{@link #resolveReadUrl(String, boolean)}。
+     * 内部存储地址集以请求体提交，以免数量较多时超出URL长度限制
+     *
+     * @param storageUrls 内部存储地址集
+     * @param thumbnail   是否缩略图
+     * @return 外部读取地址集，与内部存储地址集一一对应，没有读权限的位置为null
+     */
+    @PostMapping("/read-urls")
+    String[] resolveReadUrls(@RequestBody String[] storageUrls, @RequestParam("thumbnail") boolean thumbnail);
+
     /**
      * 转储外部资源为内部存储资源
      *
@@ -56,4 +67,13 @@ public interface FssMetaResolver {
     @PostMapping("/transfer")
     String transfer(@RequestBody FssTransferCommand command);
 
+    /**
+     * 批量转储外部资源为内部存储资源
+     *
+     * @param commands 提交参数体集
+     * @return 内部存储地址集，与提交参数体集一一对应，转储失败的位置为原始地址
+     */
+    @PostMapping("/transfer-all")
+    String[] transferAll(@RequestBody FssTransferCommand[] commands);
+
 }
@@ -0,0 +1,70 @@
+package org.truenewx.tnxjeex.fss.bench;
+
+import org.truenewx.tnxjeex.fss.service.aliyun.AliyunAccount;
+import org.truenewx.tnxjeex.fss.service.aliyun.AliyunOssClientRegistry;
+
+import com.aliyun.oss.ClientBuilderConfiguration;
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSClientBuilder;
+import com.aliyuncs.IAcsClient;
+
+/**
+ * 性能基准测试的阿里云账户，以指定的终端地址访问OSS，可指向本地的OSS兼容服务。
+ * 以路径形式访问存储桶，以兼容不支持二级域名的本地服务；不支持STS，故不提供临时凭证相关的客户端
+ *
+ * @author jianglei
+ */
+class FssBenchAliyunAccount implements AliyunAccount {
+
+    private final String endpoint;
+    private final String bucket;
+    private final OSS ossClient;
+
+    FssBenchAliyunAccount(String endpoint, String bucket, String accessKeyId, String accessKeySecret) {
+        this.endpoint = endpoint;
+        this.bucket = bucket;
+        ClientBuilderConfiguration configuration = new ClientBuilderConfiguration();
+        configuration.setSLDEnabled(true);
+        this.ossClient = new OSSClientBuilder().build(endpoint, accessKeyId, accessKeySecret, configuration);
+    }
+
+    @Override
+    public String getAccountId() {
+        return null;
+    }
+
+    @Override
+    public String getOssRegion() {
+        return null;
+    }
+
+    @Override
+    public String getOssEndpoint() {
+        return this.endpoint;
+    }
+
+    @Override
+    public String getOssBucket() {
+        return this.bucket;
+    }
+
+    @Override
+    public OSS getOssClient() {
+        return this.ossClient;
+    }
+
+    @Override
+    public AliyunOssClientRegistry getOssClientRegistry() {
+        return null;
+    }
+
+    @Override
+    public IAcsClient getAcsClient() {
+        return null;
+    }
+
+    void close() {
+        this.ossClient.shutdown();
+    }
+
+}
@@ -0,0 +1,84 @@
+package org.truenewx.tnxjeex.fss.bench;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一项性能基准测试的结果，输出为一行JSON，以便跨版本比较
+ *
+ * @author jianglei
+ */
+class FssBenchResult {
+
+    private final Map<String, Object> fields = new LinkedHashMap<>();
+    private final long[] nanos;
+    private int count;
+    private long bytes;
+
+    /**
+     * @param target     测试目标，如：own、oss
+     * @param benchmark  测试项目
+     * @param iterations 测量次数
+     */
+    FssBenchResult(String target, String benchmark, int iterations) {
+        this.fields.put("target", target);
+        this.fields.put("benchmark", benchmark);
+        this.nanos = new long[iterations];
+    }
+
+    FssBenchResult with(String name, Object value) {
+        this.fields.put(name, value);
+        return this;
+    }
+
+    /**
+     * 记录一次测量
+     *
+     * @param nanos 耗时纳秒数
+     * @param bytes 传输的字节数，不涉及传输时为0
+     */
+    void record(long nanos, long bytes) {
+        this.nanos[this.count++] = nanos;
+        this.bytes += bytes;
+    }
+
+    String toJson() {
+        long[] sorted = Arrays.copyOf(this.nanos, this.count);
+        Arrays.sort(sorted);
+        long totalNanos = Arrays.stream(sorted).sum();
+        Map<String, Object> fields = new LinkedHashMap<>(this.fields);
+        fields.put("iterations", this.count);
+        fields.put("opsPerSecond", totalNanos == 0 ? 0 : round(this.count * 1e9 / totalNanos));
+        if (this.bytes > 0) {
+            fields.put("mbPerSecond", round(this.bytes * 1e9 / totalNanos / (1024 * 1024)));
+        }
+        fields.put("p50Millis", round(percentile(sorted, 0.5) / 1e6));
+        fields.put("p99Millis", round(percentile(sorted, 0.99) / 1e6));
+        StringBuilder json = new StringBuilder("{");
+        fields.forEach((name, value) -> {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(name).append("\":");
+            if (value instanceof Number) {
+                json.append(value);
+            } else {
+                json.append('"').append(value).append('"');
+            }
+        });
+        return json.append('}').toString();
+    }
+
+    private long percentile(long[] sorted, double ratio) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * ratio) - 1)];
+    }
+
+    private double round(double value) {
+        return Math.round(value * 1000) / 1000.0;
+    }
+
+}
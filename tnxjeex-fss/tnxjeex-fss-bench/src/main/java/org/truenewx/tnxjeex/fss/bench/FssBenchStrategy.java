@@ -0,0 +1,53 @@
+package org.truenewx.tnxjeex.fss.bench;
+
+import org.truenewx.tnxjee.model.spec.user.UserIdentity;
+import org.truenewx.tnxjee.service.spec.upload.FileUploadLimit;
+import org.truenewx.tnxjeex.fss.service.FssAccessStrategy;
+import org.truenewx.tnxjeex.fss.service.model.FssProvider;
+
+/**
+ * 性能基准测试的访问策略，不限制上传，公开可读，以免权限判定影响测量结果
+ *
+ * @author jianglei
+ */
+class FssBenchStrategy implements FssAccessStrategy<UserIdentity<?>> {
+
+    private final String type;
+    private final FssProvider provider;
+
+    FssBenchStrategy(String type, FssProvider provider) {
+        this.type = type;
+        this.provider = provider;
+    }
+
+    @Override
+    public String getType() {
+        return this.type;
+    }
+
+    @Override
+    public FssProvider getProvider() {
+        return this.provider;
+    }
+
+    @Override
+    public FileUploadLimit getUploadLimit(UserIdentity<?> userIdentity) {
+        return new FileUploadLimit(Integer.MAX_VALUE, Long.MAX_VALUE, false);
+    }
+
+    @Override
+    public String getContextPath() {
+        return "/" + this.type;
+    }
+
+    @Override
+    public String getRelativeDir(String scope, UserIdentity<?> userIdentity) {
+        return "/" + scope;
+    }
+
+    @Override
+    public boolean isPublicReadable() {
+        return true;
+    }
+
+}
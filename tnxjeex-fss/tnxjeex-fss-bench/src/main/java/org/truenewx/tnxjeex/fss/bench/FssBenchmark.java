@@ -0,0 +1,224 @@
+package org.truenewx.tnxjeex.fss.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.context.support.GenericApplicationContext;
+import org.truenewx.tnxjee.model.spec.user.UserIdentity;
+import org.truenewx.tnxjeex.fss.service.FssAccessor;
+import org.truenewx.tnxjeex.fss.service.FssServiceTemplateImpl;
+import org.truenewx.tnxjeex.fss.service.aliyun.AliyunFssAccessor;
+import org.truenewx.tnxjeex.fss.service.model.FssProvider;
+import org.truenewx.tnxjeex.fss.service.own.OwnFssAccessor;
+
+/**
+ * 文件存储服务的性能基准测试，每项测试结果输出为一行JSON，以便跨版本比较。
+ * 以临时目录上的自有访问器测试服务模版的上传、下载、获取读取URL和批量获取元信息；
+ * 指定了OSS终端地址时，再以阿里云访问器测试OSS（可为本地的OSS兼容服务）的上传、下载、URL签名和批量获取元信息。
+ * 以系统属性配置：
+ * <ul>
+ * <li>bench.iterations：每项测试的测量次数，默认为20</li>
+ * <li>bench.warmups：每项测试在测量前的预热次数，默认为3</li>
+ * <li>bench.fileSizes：上传和下载测试的文件大小清单，以逗号分隔，默认为16KB、1MB、16MB</li>
+ * <li>bench.batchSize：获取读取URL和元信息的批量大小，默认为100</li>
+ * <li>bench.output：结果输出文件，默认输出到标准输出</li>
+ * <li>bench.oss.endpoint、bench.oss.bucket、bench.oss.accessKeyId、bench.oss.accessKeySecret：OSS访问参数</li>
+ * </ul>
+ *
+ * @author jianglei
+ */
+public class FssBenchmark {
+
+    private static final String SCOPE = "data";
+    private static final String FILENAME = "bench.bin";
+    private static final int SMALL_FILE_SIZE = 1024;
+
+    private final PrintStream out;
+    private final int iterations = Integer.getInteger("bench.iterations", 20);
+    private final int warmups = Integer.getInteger("bench.warmups", 3);
+    private final int batchSize = Integer.getInteger("bench.batchSize", 100);
+    private final long[] fileSizes;
+    private final Random random = new Random(0);
+    private long sequence;
+
+    private FssBenchmark(PrintStream out) {
+        this.out = out;
+        String[] fileSizes = System.getProperty("bench.fileSizes", "16384,1048576,16777216").split(",");
+        this.fileSizes = new long[fileSizes.length];
+        for (int i = 0; i < fileSizes.length; i++) {
+            this.fileSizes[i] = Long.parseLong(fileSizes[i].trim());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String output = System.getProperty("bench.output");
+        PrintStream out = output == null ? System.out : new PrintStream(new FileOutputStream(output), true, "UTF-8");
+        try {
+            FssBenchmark benchmark = new FssBenchmark(out);
+            benchmark.runOwn();
+            String endpoint = System.getProperty("bench.oss.endpoint");
+            if (endpoint != null) {
+                benchmark.runOss(endpoint, System.getProperty("bench.oss.bucket"),
+                        System.getProperty("bench.oss.accessKeyId"), System.getProperty("bench.oss.accessKeySecret"));
+            }
+        } finally {
+            if (out != System.out) {
+                out.close();
+            }
+        }
+    }
+
+    private void runOwn() throws Exception {
+        Path root = Files.createTempDirectory("fss-bench-");
+        OwnFssAccessor accessor = new OwnFssAccessor(root.toString(), null);
+        FssServiceTemplateImpl<UserIdentity<?>> service = createService("own", FssProvider.OWN, accessor);
+        try {
+            for (long fileSize : this.fileSizes) {
+                List<String> storageUrls = new ArrayList<>();
+                FssBenchResult upload = measure("own", "upload", fileSize, () -> {
+                    String storageUrl = service.write("own", SCOPE, null, fileSize, FILENAME,
+                            new ByteArrayInputStream(newContent(fileSize)));
+                    storageUrls.add(storageUrl);
+                });
+                print(upload.with("fileSize", fileSize));
+                FssBenchResult download = measure("own", "download", fileSize, new Task() {
+                    private int index;
+
+                    @Override
+                    public void run() throws Exception {
+                        String storageUrl = storageUrls.get(this.index++ % storageUrls.size());
+                        service.read(null, storageUrl, false, OutputStream.nullOutputStream());
+                    }
+                });
+                print(download.with("fileSize", fileSize));
+            }
+            String[] storageUrls = new String[this.batchSize];
+            for (int i = 0; i < storageUrls.length; i++) {
+                storageUrls[i] = service.write("own", SCOPE, null, SMALL_FILE_SIZE, FILENAME,
+                        new ByteArrayInputStream(newContent(SMALL_FILE_SIZE)));
+            }
+            print(measure("own", "readUrls", 0, () -> service.getReadUrls(null, storageUrls, false))
+                    .with("batchSize", this.batchSize));
+            print(measure("own", "metas", 0, () -> service.getMetas(null, storageUrls))
+                    .with("batchSize", this.batchSize));
+        } finally {
+            service.shutdown();
+            accessor.shutdown();
+            FileUtils.deleteDirectory(root.toFile());
+        }
+    }
+
+    private FssServiceTemplateImpl<UserIdentity<?>> createService(String type, FssProvider provider,
+            FssAccessor accessor) throws Exception {
+        GenericApplicationContext context = new GenericApplicationContext();
+        context.getBeanFactory().registerSingleton("fssBenchStrategy", new FssBenchStrategy(type, provider));
+        context.getBeanFactory().registerSingleton("fssBenchAccessor", accessor);
+        context.refresh();
+        FssServiceTemplateImpl<UserIdentity<?>> service = new FssServiceTemplateImpl<>();
+        service.afterInitialized(context);
+        return service;
+    }
+
+    /**
+     * 以访问器直接测试OSS，OSS兼容服务通常不支持STS和对象访问权限，故URL签名以账户凭证进行
+     */
+    private void runOss(String endpoint, String bucket, String accessKeyId, String accessKeySecret)
+            throws Exception {
+        FssBenchAliyunAccount account = new FssBenchAliyunAccount(endpoint, bucket, accessKeyId, accessKeySecret);
+        AliyunFssAccessor accessor = new AliyunFssAccessor(account);
+        List<String> paths = new ArrayList<>();
+        try {
+            for (long fileSize : this.fileSizes) {
+                List<String> sizePaths = new ArrayList<>();
+                FssBenchResult upload = measure("oss", "upload", fileSize, () -> {
+                    String path = "/bench/" + SCOPE + "/" + fileSize + "-" + (this.sequence + 1) + ".bin";
+                    accessor.write(new ByteArrayInputStream(newContent(fileSize)), path, FILENAME);
+                    sizePaths.add(path);
+                });
+                print(upload.with("fileSize", fileSize));
+                paths.addAll(sizePaths);
+                FssBenchResult download = measure("oss", "download", fileSize, new Task() {
+                    private int index;
+
+                    @Override
+                    public void run() throws Exception {
+                        accessor.read(sizePaths.get(this.index++ % sizePaths.size()), OutputStream.nullOutputStream());
+                    }
+                });
+                print(download.with("fileSize", fileSize));
+            }
+            List<String> smallPaths = new ArrayList<>();
+            for (int i = 0; i < this.batchSize; i++) {
+                String path = "/bench/" + SCOPE + "/small-" + i + ".bin";
+                accessor.write(new ByteArrayInputStream(newContent(SMALL_FILE_SIZE)), path, FILENAME);
+                smallPaths.add(path);
+            }
+            paths.addAll(smallPaths);
+            print(measure("oss", "readUrls", 0, () -> {
+                Date expiration = new Date(System.currentTimeMillis() + 60 * 1000);
+                for (String path : smallPaths) {
+                    account.getOssClient().generatePresignedUrl(bucket, path.substring(1), expiration);
+                }
+            }).with("batchSize", this.batchSize));
+            print(measure("oss", "metas", 0, () -> accessor.getOriginalFilenames(smallPaths))
+                    .with("batchSize", this.batchSize));
+        } finally {
+            try {
+                accessor.delete(paths);
+            } finally {
+                accessor.shutdown();
+                account.close();
+            }
+        }
+    }
+
+    /**
+     * 生成内容各不相同的随机内容，以免相同内容的文件只存储一份而影响测量结果
+     */
+    private byte[] newContent(long size) {
+        byte[] content = new byte[(int) size];
+        this.random.nextBytes(content);
+        if (content.length >= Long.BYTES) {
+            ByteBuffer.wrap(content).putLong(0, ++this.sequence);
+        } else {
+            this.sequence++;
+        }
+        return content;
+    }
+
+    private FssBenchResult measure(String target, String benchmark, long bytesPerRun, Task task) throws Exception {
+        for (int i = 0; i < this.warmups; i++) {
+            task.run();
+        }
+        FssBenchResult result = new FssBenchResult(target, benchmark, this.iterations);
+        for (int i = 0; i < this.iterations; i++) {
+            long startTime = System.nanoTime();
+            task.run();
+            result.record(System.nanoTime() - startTime, bytesPerRun);
+        }
+        return result;
+    }
+
+    private void print(FssBenchResult result) {
+        this.out.println(result.toJson());
+    }
+
+    @FunctionalInterface
+    private interface Task {
+
+        void run() throws Exception;
+
+    }
+
+}
@@ -0,0 +1,55 @@
+package org.truenewx.tnxjeex.fss.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 文件存储服务的直传策略，客户端据此绕过应用服务器直接上传文件到存储服务提供商
+ *
+ * @author jianglei
+ */
+public class FssUploadPolicy {
+
+    private String host;
+    private Map<String, String> formData = new LinkedHashMap<>();
+    private long expiredTime;
+    private String storageUrl;
+
+    public FssUploadPolicy(String host, long expiredTime) {
+        this.host = host;
+        this.expiredTime = expiredTime;
+    }
+
+    /**
+     * @return 上传的目标地址，以//开头时表示采用当前上下文的相同协议
+     */
+    public String getHost() {
+        return this.host;
+    }
+
+    /**
+     * @return 上传时需随文件一并提交的表单字段集
+     */
+    public Map<String, String> getFormData() {
+        return this.formData;
+    }
+
+    /**
+     * @return 直传策略的过期时间毫秒数
+     */
+    public long getExpiredTime() {
+        return this.expiredTime;
+    }
+
+    /**
+     * @return 上传完成后的存储URL，需在完成上传时提交以确认
+     */
+    public String getStorageUrl() {
+        return this.storageUrl;
+    }
+
+    public void setStorageUrl(String storageUrl) {
+        this.storageUrl = storageUrl;
+    }
+
+}
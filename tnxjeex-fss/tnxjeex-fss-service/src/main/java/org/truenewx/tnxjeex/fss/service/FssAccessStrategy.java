@@ -73,4 +73,13 @@ public interface FssAccessStrategy<I extends UserIdentity<?>> {
         return null;
     }
 
+    /**
+     * 获取上传图片转换器，用于在存储前缩小图片尺寸并重新编码，返回空时表示不转换
+     *
+     * @return 上传图片转换器
+     */
+    default FssImageTransformer getImageTransformer() {
+        return null;
+    }
+
 }
@@ -1,8 +1,15 @@
 package org.truenewx.tnxjeex.fss.service;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import org.truenewx.tnxjeex.fss.service.model.FssProvider;
 
@@ -25,6 +32,23 @@ public interface FssAccessor {
      */
     String getOriginalFilename(String path);
 
+    /**
+     * 批量获取指定文件集的原始文件名，访问器可覆写以采用更高效的批量获取方式
+     *
+     * @param paths 文件路径集
+     * @return 文件路径-原始文件名的映射集，不存在的文件不包含在其中
+     */
+    default Map<String, String> getOriginalFilenames(Collection<String> paths) {
+        Map<String, String> filenames = new HashMap<>();
+        for (String path : paths) {
+            String filename = getOriginalFilename(path);
+            if (filename != null) {
+                filenames.put(path, filename);
+            }
+        }
+        return filenames;
+    }
+
     /**
      * 获取指定文件的最后修改时间
      *
@@ -35,4 +59,143 @@ public interface FssAccessor {
 
     boolean read(String path, OutputStream out) throws IOException;
 
+    /**
+     * 打开指定文件的输入流，以便调用者按需拉取内容。默认将内容全部读入内存，访问器应覆写以直接打开底层输入流
+     *
+     * @param path 存储路径
+     * @return 输入流，由调用者负责关闭，指定文件不存在时返回null
+     * @throws IOException 如果打开的过程中出现错误
+     */
+    default InputStream openStream(String path) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        return read(path, out) ? new ByteArrayInputStream(out.toByteArray()) : null;
+    }
+
+    /**
+     * 打开指定文件以指定内容编码压缩的输入流，以便直接输出给支持该编码的客户端，省去解压和再压缩的开销。
+     * 访问器可覆写以提供压缩存储的文件的压缩内容，默认不支持
+     *
+     * @param path     存储路径
+     * @param encoding 内容编码，如：gzip
+     * @return 以指定编码压缩的输入流，由调用者负责关闭，指定文件不存在或未以指定编码压缩存储时返回null
+     * @throws IOException 如果打开的过程中出现错误
+     */
+    default InputStream openEncodedStream(String path, String encoding) throws IOException {
+        return null;
+    }
+
+    /**
+     * 判断指定文件是否以指定内容编码压缩存储，此时响应内容随客户端接受的内容编码而不同。
+     * 覆写{@link #openEncodedStream(String, String)}的访问器应同时覆写此方法，默认为否
+     *
+     * @param path     存储路径
+     * @param encoding 内容编码，如：gzip
+     * @return 指定文件是否以指定内容编码压缩存储
+     */
+    default boolean isEncodedStorage(String path, String encoding) {
+        return false;
+    }
+
+    /**
+     * 读取指定文件的缩略图内容到指定输出流中，访问器可覆写以在本地生成缩略图，默认读取原文件内容
+     *
+     * @param path       存储路径
+     * @param parameters 缩略图参数集
+     * @param out        输出流
+     * @return 文件是否存在
+     * @throws IOException 如果读的过程中出现错误
+     */
+    default boolean readThumbnail(String path, Map<String, String> parameters, OutputStream out)
+            throws IOException {
+        return read(path, out);
+    }
+
+    /**
+     * @return 是否支持列出文件，支持时须同时覆写{@link #list(String, Consumer)}
+     */
+    default boolean isListSupported() {
+        return false;
+    }
+
+    /**
+     * 列出指定前缀下的所有文件，访问器应覆写以分页或流式列出，默认不支持。
+     * 调用前须先确认{@link #isListSupported()}
+     *
+     * @param prefix   存储路径前缀，通常为目录路径
+     * @param consumer 文件存储路径的消费者，每列出一个文件调用一次
+     * @throws IOException 如果列出的过程中出现错误
+     */
+    default void list(String prefix, Consumer<String> consumer) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * @return 是否支持删除文件，支持时须同时覆写{@link #delete(Collection)}
+     */
+    default boolean isDeleteSupported() {
+        return false;
+    }
+
+    /**
+     * 批量删除指定文件，不存在的文件忽略。访问器应覆写以采用更高效的批量删除方式，默认不支持。
+     * 调用前须先确认{@link #isDeleteSupported()}
+     *
+     * @param paths 存储路径集
+     * @throws IOException 如果删除的过程中出现错误
+     */
+    default void delete(Collection<String> paths) throws IOException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 复制文件，目标文件已存在时覆盖。访问器可覆写以在服务端复制，默认读出后再写入
+     *
+     * @param sourcePath 源存储路径
+     * @param targetPath 目标存储路径
+     * @return 源文件是否存在
+     * @throws IOException 如果复制的过程中出现错误
+     */
+    default boolean copy(String sourcePath, String targetPath) throws IOException {
+        InputStream in = openStream(sourcePath);
+        if (in == null) {
+            return false;
+        }
+        try {
+            write(in, targetPath, getOriginalFilename(sourcePath));
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    /**
+     * 移动文件，目标文件已存在时覆盖。访问器可覆写以采用更高效的移动方式，默认复制后删除源文件，不支持删除时不支持移动
+     *
+     * @param sourcePath 源存储路径
+     * @param targetPath 目标存储路径
+     * @return 源文件是否存在
+     * @throws IOException 如果移动的过程中出现错误
+     */
+    default boolean move(String sourcePath, String targetPath) throws IOException {
+        if (!isDeleteSupported()) { // 在复制前判断，以免复制后无法删除源文件
+            throw new UnsupportedOperationException();
+        }
+        if (copy(sourcePath, targetPath)) {
+            delete(Collections.singletonList(sourcePath));
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 清除写入中断等原因遗留的临时数据，访问器可覆写以清除各自的临时数据，默认无需清除
+     *
+     * @param expiredTime 过期时间毫秒数，在此之前产生的临时数据才清除，以免影响写入中的文件
+     * @return 清除的临时数据数量
+     * @throws IOException 如果清除的过程中出现错误
+     */
+    default int purgeTemp(long expiredTime) throws IOException {
+        return 0;
+    }
+
 }
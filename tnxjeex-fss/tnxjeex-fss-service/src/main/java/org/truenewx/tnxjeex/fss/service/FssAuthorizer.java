@@ -1,6 +1,11 @@
 package org.truenewx.tnxjeex.fss.service;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
 import org.truenewx.tnxjee.model.spec.user.UserIdentity;
+import org.truenewx.tnxjeex.fss.model.FssUploadPolicy;
 import org.truenewx.tnxjeex.fss.service.model.FssProvider;
 
 /**
@@ -32,4 +37,36 @@ public interface FssAuthorizer {
      */
     String getReadUrl(UserIdentity<?> userIdentity, String path);
 
+    /**
+     * 批量获取指定资源集的读取URL，授权器可覆写以在一批资源中复用授权凭证
+     *
+     * @param userIdentity 用户标识
+     * @param paths        资源路径集
+     * @return 资源路径-读取URL的映射集，无法获取读取URL的资源不包含在其中
+     */
+    default Map<String, String> getReadUrls(UserIdentity<?> userIdentity, Collection<String> paths) {
+        Map<String, String> readUrls = new HashMap<>();
+        for (String path : paths) {
+            String readUrl = getReadUrl(userIdentity, path);
+            if (readUrl != null) {
+                readUrls.put(path, readUrl);
+            }
+        }
+        return readUrls;
+    }
+
+    /**
+     * 授权指定用户直接上传文件到指定资源路径，以便客户端绕过应用服务器直传
+     *
+     * @param userIdentity 用户标识
+     * @param path         资源路径
+     * @param filename     原始文件名
+     * @param maxSize      允许上传的最大文件大小
+     * @return 直传策略，返回null表示不支持直传
+     */
+    default FssUploadPolicy authorizeUpload(UserIdentity<?> userIdentity, String path, String filename,
+            long maxSize) {
+        return null;
+    }
+
 }
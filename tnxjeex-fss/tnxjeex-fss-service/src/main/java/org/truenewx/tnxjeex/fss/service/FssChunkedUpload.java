@@ -0,0 +1,185 @@
+package org.truenewx.tnxjeex.fss.service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.truenewx.tnxjee.core.Strings;
+import org.truenewx.tnxjee.core.util.StringUtil;
+import org.truenewx.tnxjee.service.exception.BusinessException;
+
+/**
+ * 分片上传任务。分片暂存于磁盘，允许乱序、并发到达，并随连续分片的到达增量计算内容摘要，完成时无需重新读取全部内容计算摘要
+ *
+ * @author jianglei
+ */
+class FssChunkedUpload {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String id;
+    private final String type;
+    private final String relativeDir;
+    private final String userKey;
+    private final String filename;
+    private final String extension;
+    private final long fileSize;
+    private final int chunkSize;
+    private final int chunkCount;
+    private final File dir;
+    private final BitSet receivedChunks = new BitSet();
+    private final FssDigester.Digest digest;
+    private int digestedChunkCount;
+    private volatile long lastActiveTime = System.currentTimeMillis();
+
+    FssChunkedUpload(File stagingRoot, String type, String relativeDir, String userKey, String filename,
+            String extension, long fileSize, int chunkSize, FssDigester digester) throws IOException {
+        this.id = StringUtil.uuid32();
+        this.type = type;
+        this.relativeDir = relativeDir;
+        this.userKey = userKey;
+        this.filename = filename;
+        this.extension = extension;
+        this.fileSize = fileSize;
+        this.chunkSize = chunkSize;
+        this.chunkCount = Math.max(1, (int) ((fileSize + chunkSize - 1) / chunkSize));
+        this.dir = new File(stagingRoot, this.id);
+        if (!this.dir.mkdirs()) {
+            throw new IOException("Can not create staging directory " + this.dir.getAbsolutePath());
+        }
+        this.digest = digester.newDigest();
+    }
+
+    public String getId() {
+        return this.id;
+    }
+
+    public String getType() {
+        return this.type;
+    }
+
+    public String getRelativeDir() {
+        return this.relativeDir;
+    }
+
+    public String getUserKey() {
+        return this.userKey;
+    }
+
+    public String getFilename() {
+        return this.filename;
+    }
+
+    public String getExtension() {
+        return this.extension;
+    }
+
+    public long getFileSize() {
+        return this.fileSize;
+    }
+
+    public long getLastActiveTime() {
+        return this.lastActiveTime;
+    }
+
+    private File getChunkFile(int index) {
+        return new File(this.dir, String.valueOf(index));
+    }
+
+    private long getChunkLength(int index) {
+        return index < this.chunkCount - 1 ? this.chunkSize : this.fileSize - (long) this.chunkSize * index;
+    }
+
+    /**
+     * 写入指定分片，重复写入同一分片时以后写入的为准，已计入摘要的分片不允许重复写入
+     *
+     * @param index 分片索引，从0开始
+     * @param in    分片内容输入流
+     * @throws IOException 如果写入过程中出现错误
+     */
+    public void writeChunk(int index, InputStream in) throws IOException {
+        this.lastActiveTime = System.currentTimeMillis();
+        if (index < 0 || index >= this.chunkCount) {
+            throw new BusinessException(FssExceptionCodes.INVALID_CHUNK, index);
+        }
+        synchronized (this) {
+            if (index < this.digestedChunkCount) { // 已计入摘要的分片内容不能再改变
+                return;
+            }
+        }
+        // 先写入临时文件，校验大小后再改为正式分片文件，以免不完整的分片被计入摘要
+        File tempFile = new File(this.dir, index + Strings.UNDERLINE + StringUtil.uuid32() + Strings.DOT + "temp");
+        long expectedLength = getChunkLength(index);
+        long length;
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            // 至多多读一个字节以判断是否超长，不将超长的内容全部写入磁盘
+            length = IOUtils.copyLarge(in, out, 0, expectedLength + 1, new byte[BUFFER_SIZE]);
+        }
+        if (length != expectedLength) {
+            tempFile.delete();
+            throw new BusinessException(FssExceptionCodes.INVALID_CHUNK, index);
+        }
+        synchronized (this) {
+            if (index < this.digestedChunkCount) {
+                tempFile.delete();
+                return;
+            }
+            Files.move(tempFile.toPath(), getChunkFile(index).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            this.receivedChunks.set(index);
+            // 依序将连续到达的分片计入摘要，刚写入的分片一般仍在系统缓存中，读取代价很小
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (this.digestedChunkCount < this.chunkCount && this.receivedChunks.get(this.digestedChunkCount)) {
+                try (InputStream chunkIn = new FileInputStream(getChunkFile(this.digestedChunkCount))) {
+                    int count;
+                    while ((count = chunkIn.read(buffer)) > 0) {
+                        this.digest.update(buffer, 0, count);
+                    }
+                }
+                this.digestedChunkCount++;
+            }
+        }
+    }
+
+    /**
+     * @return 已接收的分片索引集
+     */
+    public synchronized int[] getReceivedChunks() {
+        return this.receivedChunks.stream().toArray();
+    }
+
+    /**
+     * @return 内容摘要，尚有分片未接收时抛出业务异常
+     */
+    public synchronized String getDigest() {
+        if (this.digestedChunkCount < this.chunkCount) {
+            throw new BusinessException(FssExceptionCodes.UPLOAD_INCOMPLETE, this.receivedChunks.nextClearBit(0));
+        }
+        return this.digest.getHex();
+    }
+
+    /**
+     * @return 依序合并全部分片的输入流
+     * @throws IOException 如果打开分片文件出现错误
+     */
+    public InputStream openStream() throws IOException {
+        List<InputStream> ins = new ArrayList<>();
+        for (int i = 0; i < this.chunkCount; i++) {
+            ins.add(new BufferedInputStream(new FileInputStream(getChunkFile(i)), BUFFER_SIZE));
+        }
+        return new SequenceInputStream(Collections.enumeration(ins));
+    }
+
+    /**
+     * 清除暂存的分片
+     */
+    public void clean() {
+        FileUtils.deleteQuietly(this.dir);
+    }
+
+}
@@ -0,0 +1,70 @@
+package org.truenewx.tnxjeex.fss.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.truenewx.tnxjee.core.util.EncryptUtil;
+import org.truenewx.tnxjeex.fss.service.util.FssMessageDigester;
+
+/**
+ * 文件内容摘要计算器，摘要作为存储文件名，使相同内容的文件只存储一份。
+ * 更换摘要算法后，已有文件仍以原文件名存储和读取，不受影响
+ *
+ * @author jianglei
+ */
+public interface FssDigester {
+
+    /**
+     * MD5摘要计算器，为默认的摘要计算器，文件名与以往保持一致
+     */
+    FssDigester MD5 = new FssMessageDigester("MD5") {
+        @Override
+        public String digest(InputStream in) throws IOException {
+            return EncryptUtil.encryptByMd5(in);
+        }
+    };
+
+    /**
+     * SHA-256摘要计算器，碰撞概率更低，新版本JDK在支持的CPU上以硬件指令加速
+     */
+    FssDigester SHA256 = new FssMessageDigester("SHA-256");
+
+    /**
+     * @return 新的增量摘要
+     */
+    Digest newDigest();
+
+    /**
+     * 计算指定输入流内容的摘要
+     *
+     * @param in 输入流
+     * @return 十六进制表示的摘要
+     * @throws IOException 如果读取输入流出现错误
+     */
+    default String digest(InputStream in) throws IOException {
+        Digest digest = newDigest();
+        byte[] buffer = new byte[64 * 1024];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            digest.update(buffer, 0, count);
+        }
+        return digest.getHex();
+    }
+
+    /**
+     * 增量摘要，非线程安全
+     */
+    interface Digest {
+
+        void update(byte[] bytes, int offset, int length);
+
+        /**
+         * 获取当前已更新内容的摘要，获取后仍可继续更新
+         *
+         * @return 十六进制表示的摘要
+         */
+        String getHex();
+
+    }
+
+}
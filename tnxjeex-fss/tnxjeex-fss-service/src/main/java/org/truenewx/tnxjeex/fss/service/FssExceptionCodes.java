@@ -30,4 +30,24 @@ public class FssExceptionCodes {
      */
     public static final String NO_EXTENSION = "error.fss.no_extension";
 
+    /**
+     * 上传任务不存在
+     */
+    public static final String UPLOAD_NOT_FOUND = "error.fss.upload_not_found";
+
+    /**
+     * 无效的分片
+     */
+    public static final String INVALID_CHUNK = "error.fss.invalid_chunk";
+
+    /**
+     * 上传尚未完成
+     */
+    public static final String UPLOAD_INCOMPLETE = "error.fss.upload_incomplete";
+
+    /**
+     * 批量转储的资源过多
+     */
+    public static final String TOO_MANY_TRANSFERS = "error.fss.too_many_transfers";
+
 }
@@ -0,0 +1,194 @@
+package org.truenewx.tnxjeex.fss.service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.commons.io.FilenameUtils;
+import org.truenewx.tnxjee.core.Strings;
+import org.truenewx.tnxjeex.fss.service.util.FssImageUtil;
+
+/**
+ * 文件存储服务的上传图片转换器，在图片存储前按需缩小尺寸并重新编码。
+ * 重新编码时不写出原图的元数据，故EXIF等信息（包括拍摄位置）随之去除；
+ * 由于不写出EXIF方向，EXIF方向不为正常方向的图片不转换，保留原图，以免显示方向错误。
+ * 像素数超过限定的图片也不转换，以免解码超大图片耗尽内存。
+ * 由访问策略提供，仅对服务端写入的文件有效，客户端直传的文件不经过服务端，无法转换
+ *
+ * @author jianglei
+ */
+public class FssImageTransformer {
+
+    /**
+     * 原图的存储文件名后缀，位于转换后文件的主文件名和原图扩展名之间
+     */
+    public static final String ORIGINAL_SUFFIX = "_original";
+
+    private int maxWidth;
+    private int maxHeight;
+    private String formatName;
+    private float quality = 0.85f;
+    private boolean originalPreserved;
+    private long maxPixels = FssImageUtil.DEFAULT_MAX_PIXELS;
+
+    /**
+     * @param maxWidth 最大宽度，超过时等比缩小，小于等于0时不限定
+     */
+    public void setMaxWidth(int maxWidth) {
+        this.maxWidth = maxWidth;
+    }
+
+    /**
+     * @param maxHeight 最大高度，超过时等比缩小，小于等于0时不限定
+     */
+    public void setMaxHeight(int maxHeight) {
+        this.maxHeight = maxHeight;
+    }
+
+    /**
+     * @param formatName 转换后的图片格式名称，如：jpg、png，须为ImageIO支持写出的格式，为空时保持原格式
+     */
+    public void setFormatName(String formatName) {
+        this.formatName = formatName;
+    }
+
+    /**
+     * @param quality 有损压缩格式的压缩质量，取值0~1，默认为0.85
+     */
+    public void setQuality(float quality) {
+        this.quality = quality;
+    }
+
+    /**
+     * @param originalPreserved 是否同时保留原图，保留时原图存储于转换后文件名加{@link #ORIGINAL_SUFFIX}后缀的文件中
+     */
+    public void setOriginalPreserved(boolean originalPreserved) {
+        this.originalPreserved = originalPreserved;
+    }
+
+    public boolean isOriginalPreserved() {
+        return this.originalPreserved;
+    }
+
+    /**
+     * @param maxPixels 可转换的原图最大像素数，超过时不转换，小于等于0时不限定，默认为4000万
+     */
+    public void setMaxPixels(long maxPixels) {
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * 判断是否支持转换指定格式的图片
+     *
+     * @param formatName 原图格式名称，一般为扩展名
+     * @return 是否支持
+     */
+    public boolean supports(String formatName) {
+        return ImageIO.getImageReadersBySuffix(formatName).hasNext()
+                && ImageIO.getImageWritersBySuffix(getTargetFormatName(formatName)).hasNext();
+    }
+
+    /**
+     * 获取转换后的图片格式名称
+     *
+     * @param formatName 原图格式名称
+     * @return 转换后的图片格式名称
+     */
+    public String getTargetFormatName(String formatName) {
+        return this.formatName == null ? formatName : this.formatName;
+    }
+
+    /**
+     * 获取保留的原图的存储文件名对应的转换后文件的存储文件名
+     *
+     * @param storageFilename 存储文件名
+     * @return 转换后文件的存储文件名，指定存储文件名不是保留的原图的存储文件名时返回null
+     */
+    public String getTransformedStorageFilename(String storageFilename) {
+        String baseName = FilenameUtils.getBaseName(storageFilename);
+        if (!baseName.endsWith(ORIGINAL_SUFFIX) || baseName.length() == ORIGINAL_SUFFIX.length()) {
+            return null;
+        }
+        String formatName = FilenameUtils.getExtension(storageFilename);
+        String targetFormatName = getTargetFormatName(formatName);
+        // 格式未变化时保持原扩展名的写法
+        String targetExtension = targetFormatName.equalsIgnoreCase(formatName) ? formatName : targetFormatName;
+        return baseName.substring(0, baseName.length() - ORIGINAL_SUFFIX.length()) + Strings.DOT + targetExtension;
+    }
+
+    /**
+     * 转换图片
+     *
+     * @param in         原图输入流
+     * @param formatName 原图格式名称
+     * @return 转换后的图片内容，原图不是可识别的图片、像素数超过限定或EXIF方向不为正常方向时返回null
+     * @throws IOException 如果读写过程中出现错误
+     */
+    public byte[] transform(InputStream in, String formatName) throws IOException {
+        BufferedImage image = FssImageUtil.read(in, this.maxPixels, true);
+        if (image == null) {
+            return null;
+        }
+        double scale = 1;
+        if (this.maxWidth > 0) {
+            scale = Math.min(scale, (double) this.maxWidth / image.getWidth());
+        }
+        if (this.maxHeight > 0) {
+            scale = Math.min(scale, (double) this.maxHeight / image.getHeight());
+        }
+        String targetFormatName = getTargetFormatName(formatName);
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        // JPEG不支持透明通道，需转换为RGB
+        boolean opaque = "jpg".equalsIgnoreCase(targetFormatName) || "jpeg".equalsIgnoreCase(targetFormatName)
+                || "bmp".equalsIgnoreCase(targetFormatName);
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage target = new BufferedImage(targetWidth, targetHeight, type);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        image.flush();
+        return encode(target, targetFormatName);
+    }
+
+    private byte[] encode(BufferedImage image, String formatName) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersBySuffix(formatName);
+        if (!writers.hasNext()) {
+            return null;
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                if (param.getCompressionType() == null) {
+                    param.setCompressionType(param.getCompressionTypes()[0]);
+                }
+                param.setCompressionQuality(this.quality);
+            }
+            // 不传入元数据，原图的EXIF等信息不会写出
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+}
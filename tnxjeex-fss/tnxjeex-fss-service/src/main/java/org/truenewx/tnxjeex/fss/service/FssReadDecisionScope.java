@@ -0,0 +1,50 @@
+package org.truenewx.tnxjeex.fss.service;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 文件存储读权限判定的作用域，作用域内相同的判定只进行一次。通常在一次请求的处理前开启，处理后关闭，
+ * 嵌套开启时沿用外层作用域
+ *
+ * @author jianglei
+ */
+public class FssReadDecisionScope implements AutoCloseable {
+
+    private static final ThreadLocal<FssReadDecisionScope> CURRENT = new ThreadLocal<>();
+
+    private final Map<String, Boolean> decisions = new HashMap<>();
+    private final boolean outermost;
+
+    private FssReadDecisionScope(boolean outermost) {
+        this.outermost = outermost;
+    }
+
+    /**
+     * 在当前线程中开启作用域
+     *
+     * @return 作用域，使用完毕后必须关闭
+     */
+    public static FssReadDecisionScope open() {
+        FssReadDecisionScope current = CURRENT.get();
+        if (current == null) {
+            current = new FssReadDecisionScope(true);
+            CURRENT.set(current);
+            return current;
+        }
+        return new FssReadDecisionScope(false);
+    }
+
+    static Map<String, Boolean> getCurrentDecisions() {
+        FssReadDecisionScope current = CURRENT.get();
+        return current == null ? null : current.decisions;
+    }
+
+    @Override
+    public void close() {
+        if (this.outermost) {
+            CURRENT.remove();
+        }
+    }
+
+}
@@ -0,0 +1,21 @@
+package org.truenewx.tnxjeex.fss.service;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * 文件存储引用检查器，由应用提供，用于判断存储的文件是否仍被业务数据引用，未被引用的文件可被回收
+ *
+ * @author jianglei
+ */
+public interface FssReferenceChecker {
+
+    /**
+     * 从指定存储URL集中筛选出仍被引用的存储URL。无法确定时应视为被引用，以免误删
+     *
+     * @param storageUrls 存储URL集
+     * @return 仍被引用的存储URL集
+     */
+    Set<String> getReferenced(Collection<String> storageUrls);
+
+}
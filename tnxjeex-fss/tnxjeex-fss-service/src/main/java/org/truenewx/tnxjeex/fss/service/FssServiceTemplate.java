@@ -8,6 +8,7 @@ import org.truenewx.tnxjee.model.spec.user.UserIdentity;
 import org.truenewx.tnxjee.service.Service;
 import org.truenewx.tnxjee.service.spec.upload.FileUploadLimit;
 import org.truenewx.tnxjeex.fss.model.FssFileMeta;
+import org.truenewx.tnxjeex.fss.model.FssUploadPolicy;
 
 /**
  * 文件存储服务模版
@@ -17,6 +18,11 @@ import org.truenewx.tnxjeex.fss.model.FssFileMeta;
  */
 public interface FssServiceTemplate<I extends UserIdentity<?>> extends Service {
 
+    /**
+     * 自有提供商的读取URL中表示读取缩略图的参数名
+     */
+    String THUMBNAIL_PARAMETER = "thumbnail";
+
     /**
      * 获取指定用户上传指定业务类型的文件上传限制条件
      *
@@ -41,6 +47,74 @@ public interface FssServiceTemplate<I extends UserIdentity<?>> extends Service {
     String write(String type, String scope, I userIdentity, long fileSize, String filename, InputStream in)
             throws IOException;
 
+    /**
+     * 指定用户在业务授权类型下开始分片上传文件
+     *
+     * @param type         业务类型
+     * @param scope        业务模型标识
+     * @param userIdentity 用户标识
+     * @param fileSize     文件大小
+     * @param filename     文件名
+     * @param chunkSize    分片大小，除最后一个分片外，每个分片的大小均须与此相同
+     * @return 上传任务id
+     * @throws IOException 如果创建上传任务出现错误
+     */
+    String initChunkedUpload(String type, String scope, I userIdentity, long fileSize, String filename,
+            int chunkSize) throws IOException;
+
+    /**
+     * 指定用户写入分片上传任务的一个分片，分片可乱序、并发写入，重复写入同一分片以后写入的为准
+     *
+     * @param userIdentity 用户标识
+     * @param uploadId     上传任务id
+     * @param index        分片索引，从0开始
+     * @param in           分片内容输入流
+     * @throws IOException 如果写的过程中出现错误
+     */
+    void writeChunk(I userIdentity, String uploadId, int index, InputStream in) throws IOException;
+
+    /**
+     * 获取指定分片上传任务中已接收的分片索引集，用于断点续传
+     *
+     * @param userIdentity 用户标识
+     * @param uploadId     上传任务id
+     * @return 已接收的分片索引集
+     */
+    int[] getReceivedChunks(I userIdentity, String uploadId);
+
+    /**
+     * 指定用户完成分片上传任务
+     *
+     * @param userIdentity 用户标识
+     * @param uploadId     上传任务id
+     * @return 写好的文件的存储URL
+     * @throws IOException 如果写的过程中出现错误
+     */
+    String completeChunkedUpload(I userIdentity, String uploadId) throws IOException;
+
+    /**
+     * 获取指定用户在业务授权类型下直传文件的策略
+     *
+     * @param type         业务类型
+     * @param scope        业务模型标识
+     * @param userIdentity 用户标识
+     * @param fileSize     文件大小
+     * @param filename     文件名
+     * @return 直传策略，返回null表示不支持直传，此时应通过服务端上传
+     */
+    FssUploadPolicy getUploadPolicy(String type, String scope, I userIdentity, long fileSize, String filename);
+
+    /**
+     * 指定用户完成直传文件
+     *
+     * @param type         业务类型
+     * @param scope        业务模型标识
+     * @param userIdentity 用户标识
+     * @param storageUrl   直传策略中的存储URL
+     * @return 存储URL，文件尚未上传完成时返回null
+     */
+    String completeUpload(String type, String scope, I userIdentity, String storageUrl);
+
     /**
      * 指定用户获取指定内部存储URL对应的外部读取URL
      *
@@ -51,6 +125,16 @@ public interface FssServiceTemplate<I extends UserIdentity<?>> extends Service {
      */
     String getReadUrl(I userIdentity, String storageUrl, boolean thumbnail);
 
+    /**
+     * 指定用户批量获取指定内部存储URL集对应的外部读取URL集，同一业务类型的一并签名
+     *
+     * @param userIdentity 用户标识
+     * @param storageUrls  存储URL集
+     * @param thumbnail    是否缩略图
+     * @return 外部读取URL集，与存储URL集一一对应，没有读权限的位置为null
+     */
+    String[] getReadUrls(I userIdentity, String[] storageUrls, boolean thumbnail);
+
     /**
      * 获取指定资源的读取元信息
      *
@@ -60,6 +144,15 @@ public interface FssServiceTemplate<I extends UserIdentity<?>> extends Service {
      */
     FssFileMeta getMeta(I userIdentity, String storageUrl);
 
+    /**
+     * 批量获取指定资源集的读取元信息
+     *
+     * @param userIdentity 用户标识
+     * @param storageUrls  存储URL集
+     * @return 读取元信息集，与存储URL集一一对应，无法获取元信息的位置为null
+     */
+    FssFileMeta[] getMetas(I userIdentity, String[] storageUrls);
+
     /**
      * 获取指定文件的最后修改时间
      *
@@ -77,6 +170,50 @@ public interface FssServiceTemplate<I extends UserIdentity<?>> extends Service {
      * @param out          输出流
      * @throws IOException 如果读的过程中出现错误
      */
-    void read(I userIdentity, String path, OutputStream out) throws IOException;
+    default void read(I userIdentity, String path, OutputStream out) throws IOException {
+        read(userIdentity, path, false, out);
+    }
+
+    /**
+     * 指定用户读取指定路径的文件内容到指定输出流中
+     *
+     * @param userIdentity 用户标识
+     * @param path         文件路径
+     * @param thumbnail    是否缩略图
+     * @param out          输出流
+     * @throws IOException 如果读的过程中出现错误
+     */
+    void read(I userIdentity, String path, boolean thumbnail, OutputStream out) throws IOException;
+
+    /**
+     * 指定用户打开指定路径文件的输入流，以便调用者按需拉取内容
+     *
+     * @param userIdentity 用户标识
+     * @param path         文件路径
+     * @param thumbnail    是否缩略图
+     * @return 输入流，由调用者负责关闭，指定文件不存在时返回null
+     * @throws IOException 如果打开的过程中出现错误
+     */
+    InputStream openStream(I userIdentity, String path, boolean thumbnail) throws IOException;
+
+    /**
+     * 指定用户打开指定路径文件以指定内容编码压缩的输入流，以便直接输出给支持该编码的客户端
+     *
+     * @param userIdentity 用户标识
+     * @param path         文件路径
+     * @param encoding     内容编码，如：gzip
+     * @return 输入流，由调用者负责关闭，指定文件不存在或未以指定编码压缩存储时返回null
+     * @throws IOException 如果打开的过程中出现错误
+     */
+    InputStream openEncodedStream(I userIdentity, String path, String encoding) throws IOException;
+
+    /**
+     * 判断指定路径文件是否以指定内容编码压缩存储，此时下载响应内容随客户端接受的内容编码而不同
+     *
+     * @param path     文件路径
+     * @param encoding 内容编码，如：gzip
+     * @return 指定路径文件是否以指定内容编码压缩存储
+     */
+    boolean isEncodedStorage(String path, String encoding);
 
 }
@@ -1,25 +1,51 @@
 package org.truenewx.tnxjeex.fss.service;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.CountingOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.context.ApplicationContext;
 import org.truenewx.tnxjee.core.Strings;
 import org.truenewx.tnxjee.core.beans.ContextInitializedBean;
-import org.truenewx.tnxjee.core.util.EncryptUtil;
+import org.truenewx.tnxjee.core.util.LogUtil;
 import org.truenewx.tnxjee.core.util.NetUtil;
+import org.truenewx.tnxjee.core.util.StringUtil;
 import org.truenewx.tnxjee.model.spec.user.UserIdentity;
 import org.truenewx.tnxjee.service.exception.BusinessException;
 import org.truenewx.tnxjee.service.spec.upload.FileUploadLimit;
 import org.truenewx.tnxjeex.fss.model.FssFileMeta;
+import org.truenewx.tnxjeex.fss.model.FssUploadPolicy;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetrics;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetricsAware;
 import org.truenewx.tnxjeex.fss.service.model.FssProvider;
 import org.truenewx.tnxjeex.fss.service.model.FssStoragePath;
+import org.truenewx.tnxjeex.fss.service.util.FssExpirableCache;
 
 /**
  * 文件存储服务模版实现
@@ -32,6 +58,93 @@ public class FssServiceTemplateImpl<I extends UserIdentity<?>>
     private final Map<String, FssAccessStrategy<I>> strategies = new HashMap<>();
     private final Map<FssProvider, FssAuthorizer> authorizers = new HashMap<>();
     private final Map<FssProvider, FssAccessor> accessors = new HashMap<>();
+    private final Map<String, FssChunkedUpload> chunkedUploads = new ConcurrentHashMap<>();
+    private Executor executor;
+    private ExecutorService metaExecutor; // 未设置线程池时内置的批量获取元信息的线程池
+    private int metaBatchParallelism = 8; // 批量获取元信息时的最大并发数
+    private File chunkStagingDir = new File(System.getProperty("java.io.tmpdir"), "tnxjeex-fss-chunks");
+    private int chunkedUploadExpiredSeconds = 24 * 60 * 60; // 分片上传任务默认24小时无活动后过期
+    private int minChunkSize = 256 * 1024;
+    private ScheduledExecutorService chunkedUploadCleaner;
+    private int readDecisionCacheSeconds; // 读权限判定的缓存秒数，默认不缓存
+    private final FssExpirableCache<String, Boolean> readDecisions = new FssExpirableCache<>(10000);
+    private FssMetrics metrics = FssMetrics.NONE;
+    private FssDigester digester = FssDigester.MD5;
+    // 图片解码占用内存较大，限制同时转换的图片数
+    private Semaphore imageTransformPermits = new Semaphore(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * @param executor 批量获取元信息时使用的线程池，未设置时使用内置的线程池，其线程数为批量获取元信息时的最大并发数
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param metaBatchParallelism 批量获取元信息时的最大并发数，默认为8，小于等于1时串行获取
+     */
+    public void setMetaBatchParallelism(int metaBatchParallelism) {
+        this.metaBatchParallelism = metaBatchParallelism;
+    }
+
+    /**
+     * @param chunkStagingDir 分片上传时暂存分片的目录
+     */
+    public void setChunkStagingDir(String chunkStagingDir) {
+        this.chunkStagingDir = new File(chunkStagingDir);
+    }
+
+    /**
+     * @param chunkedUploadExpiredSeconds 分片上传任务无活动后的过期秒数
+     */
+    public void setChunkedUploadExpiredSeconds(int chunkedUploadExpiredSeconds) {
+        this.chunkedUploadExpiredSeconds = chunkedUploadExpiredSeconds;
+    }
+
+    /**
+     * @param minChunkSize 分片上传时的最小分片大小，以免过小的分片产生过多暂存文件，默认为256KB，文件不大于该大小时不受限
+     */
+    public void setMinChunkSize(int minChunkSize) {
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * 设置读权限判定的缓存秒数。访问策略的读权限判定可能需要访问数据库，缓存后同一用户在缓存期内对同一相对目录的读权限只判定一次，
+     * 相应地，权限变更最多延迟该时长后生效
+     *
+     * @param readDecisionCacheSeconds 读权限判定的缓存秒数，小于等于0时不缓存
+     */
+    public void setReadDecisionCacheSeconds(int readDecisionCacheSeconds) {
+        this.readDecisionCacheSeconds = readDecisionCacheSeconds;
+    }
+
+    /**
+     * @param digester 内容摘要计算器，默认为MD5
+     */
+    public void setDigester(FssDigester digester) {
+        this.digester = digester;
+    }
+
+    /**
+     * @param imageTransformParallelism 同时转换上传图片的最大数量，默认为CPU核数，超过时等待
+     */
+    public void setImageTransformParallelism(int imageTransformParallelism) {
+        this.imageTransformPermits = new Semaphore(imageTransformParallelism);
+    }
+
+    /**
+     * @param metrics 度量指标记录器，未设置时从容器中获取唯一的记录器，均没有时不记录
+     */
+    public void setMetrics(FssMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * 清空读权限判定的缓存，以使权限变更立即生效
+     */
+    public void clearReadDecisionCache() {
+        this.readDecisions.clear();
+    }
 
     @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
@@ -50,6 +163,67 @@ public class FssServiceTemplateImpl<I extends UserIdentity<?>>
         for (FssAccessor accessor : accessors.values()) {
             this.accessors.put(accessor.getProvider(), accessor);
         }
+
+        if (this.executor == null && this.metaBatchParallelism > 1) {
+            AtomicInteger threadNo = new AtomicInteger();
+            ThreadPoolExecutor metaExecutor = new ThreadPoolExecutor(this.metaBatchParallelism,
+                    this.metaBatchParallelism, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "fss-meta-" + threadNo.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            metaExecutor.allowCoreThreadTimeOut(true); // 空闲时不占用线程
+            this.metaExecutor = metaExecutor;
+            this.executor = metaExecutor;
+        }
+
+        if (this.metrics == FssMetrics.NONE) {
+            this.metrics = context.getBeanProvider(FssMetrics.class).getIfUnique(() -> FssMetrics.NONE);
+        }
+        if (this.metrics.isEnabled()) {
+            List<Object> metricsAwares = new ArrayList<>(this.authorizers.values());
+            metricsAwares.addAll(this.accessors.values());
+            for (Object metricsAware : metricsAwares) {
+                if (metricsAware instanceof FssMetricsAware) {
+                    ((FssMetricsAware) metricsAware).setMetrics(this.metrics);
+                }
+            }
+            this.metrics.registerGauge(FssMetrics.READ_DECISION_CACHE_HITS, null, this.readDecisions::getHitCount);
+            this.metrics.registerGauge(FssMetrics.READ_DECISION_CACHE_MISSES, null, this.readDecisions::getMissCount);
+        }
+
+        // 定时清理过期的分片上传任务及其暂存分片，包括此前运行中遗留的暂存分片
+        this.chunkedUploadCleaner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fss-chunked-upload-cleaner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long cleanIntervalSeconds = Math.max(60, this.chunkedUploadExpiredSeconds / 4);
+        this.chunkedUploadCleaner.scheduleWithFixedDelay(this::cleanExpiredChunkedUploads, 0, cleanIntervalSeconds,
+                TimeUnit.SECONDS);
+    }
+
+    /**
+     * 停止定时清理过期的分片上传任务，并关闭内置的批量获取元信息的线程池
+     */
+    public void shutdown() {
+        if (this.chunkedUploadCleaner != null) {
+            this.chunkedUploadCleaner.shutdown();
+        }
+        if (this.metaExecutor != null) {
+            this.metaExecutor.shutdown();
+        }
+    }
+
+    private long startTiming() {
+        return this.metrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    private void recordTime(String operation, FssAccessStrategy<I> strategy, long startTime) {
+        if (this.metrics.isEnabled()) {
+            this.metrics.recordTime(operation, strategy.getType(), strategy.getProvider(),
+                    System.nanoTime() - startTime);
+        }
     }
 
     @Override
@@ -73,24 +247,276 @@ public class FssServiceTemplateImpl<I extends UserIdentity<?>>
         FileUploadLimit uploadLimit = strategy.getUploadLimit(userIdentity);
         String extension = uploadLimit.validate(fileSize, filename);
         // 获取相对目录，同时校验写权限
+        String relativeDir = getWritableRelativeDir(strategy, scope, userIdentity);
+        FssImageTransformer transformer = strategy.getImageTransformer();
+        String formatName = StringUtils.removeStart(extension, Strings.DOT);
+        if (transformer != null && StringUtils.isNotBlank(formatName) && transformer.supports(formatName)) {
+            // 图片转换需多次读取原图，用BufferedInputStream装载以确保输入流可以标记和重置位置，已支持的（如内存中的内容）无需再装载
+            if (!in.markSupported()) {
+                in = new BufferedInputStream(in);
+            }
+            in.mark(Integer.MAX_VALUE);
+            String storageUrl = writeTransformed(strategy, relativeDir, extension, filename, in, transformer);
+            if (storageUrl != null) {
+                return storageUrl;
+            }
+            in.reset();
+        }
+        return writeDigesting(strategy, relativeDir, extension, filename, in);
+    }
+
+    /**
+     * 边写入边计算内容摘要，先以随机文件名写入，再移至以摘要命名的存储文件，内容只读取一次且不在内存中整体缓存。
+     * 移动前中断遗留的随机命名文件不被引用，由垃圾回收器回收
+     *
+     * @return 存储地址
+     */
+    private String writeDigesting(FssAccessStrategy<I> strategy, String relativeDir, String extension,
+            String filename, InputStream in) throws IOException {
+        FssAccessor accessor = this.accessors.get(strategy.getProvider());
+        if (!accessor.isDeleteSupported()) { // 不支持删除即不支持移动，暂存到本地临时文件计算摘要后再写入
+            return writeSpooled(strategy, relativeDir, extension, filename, in);
+        }
+        String type = strategy.getType();
+        String dir = NetUtil.standardizeUrl(relativeDir);
+        String contextPath = NetUtil.standardizeUrl(strategy.getContextPath());
+        FssStoragePath tempFsp = new FssStoragePath(type, dir, StringUtil.uuid32() + extension);
+        String tempPath = contextPath + tempFsp.getRelativePath();
+        FssDigester.Digest digest = this.digester.newDigest();
+        writeContent(strategy, tempPath, filename, new DigestingInputStream(in, digest));
+        FssStoragePath fsp = new FssStoragePath(type, dir, digest.getHex() + extension);
+        String storagePath = contextPath + fsp.getRelativePath();
+        accessor.move(tempPath, storagePath); // 相同内容的文件已存在时覆盖，内容不变
+        authorizePublicRead(strategy, storagePath);
+        return fsp.getUrl();
+    }
+
+    /**
+     * 暂存到本地临时文件，同时计算内容摘要，再从临时文件写入以摘要命名的存储文件
+     *
+     * @return 存储地址
+     */
+    private String writeSpooled(FssAccessStrategy<I> strategy, String relativeDir, String extension,
+            String filename, InputStream in) throws IOException {
+        File tempFile = File.createTempFile("fss-write-", ".temp");
+        try {
+            FssDigester.Digest digest = this.digester.newDigest();
+            try (OutputStream out = new FileOutputStream(tempFile)) {
+                IOUtils.copyLarge(new DigestingInputStream(in, digest), out);
+            }
+            try (InputStream fileIn = new FileInputStream(tempFile)) {
+                return write(strategy, relativeDir, digest.getHex() + extension, filename, fileIn);
+            }
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * 转换图片后写入，转换后未变小时不写入，以保留原图
+     *
+     * @return 存储地址，未写入时返回null
+     */
+    private String writeTransformed(FssAccessStrategy<I> strategy, String relativeDir, String extension,
+            String filename, InputStream in, FssImageTransformer transformer) throws IOException {
+        String formatName = StringUtils.removeStart(extension, Strings.DOT);
+        CountingInputStream countingIn = new CountingInputStream(in);
+        byte[] content;
+        long startTime = startTiming();
+        this.imageTransformPermits.acquireUninterruptibly();
+        try {
+            content = transformer.transform(countingIn, formatName);
+        } finally {
+            this.imageTransformPermits.release();
+        }
+        recordTime(FssMetrics.IMAGE_TRANSFORM, strategy, startTime);
+        long originalSize = countingIn.getByteCount();
+        if (content == null || content.length >= originalSize) {
+            return null;
+        }
+        String targetFormatName = transformer.getTargetFormatName(formatName);
+        String targetExtension = extension;
+        String targetFilename = filename;
+        if (!targetFormatName.equalsIgnoreCase(formatName)) { // 格式变化时原始文件名的扩展名随之变化
+            targetExtension = Strings.DOT + targetFormatName;
+            targetFilename = FilenameUtils.removeExtension(filename) + targetExtension;
+        }
+        String digest = this.digester.digest(new ByteArrayInputStream(content));
+        String storageUrl = write(strategy, relativeDir, digest + targetExtension, targetFilename,
+                new ByteArrayInputStream(content));
+        if (transformer.isOriginalPreserved()) {
+            in.reset();
+            write(strategy, relativeDir, digest + FssImageTransformer.ORIGINAL_SUFFIX + extension, filename, in);
+        }
+        if (this.metrics.isEnabled()) {
+            this.metrics.recordBytes(FssMetrics.IMAGE_TRANSFORM, strategy.getType(), strategy.getProvider(),
+                    originalSize - content.length);
+        }
+        return storageUrl;
+    }
+
+    private String getWritableRelativeDir(FssAccessStrategy<I> strategy, String scope, I userIdentity) {
         String relativeDir = strategy.getRelativeDir(scope, userIdentity);
         if (relativeDir == null) {
             throw new BusinessException(FssExceptionCodes.NO_WRITE_AUTHORITY);
         }
-        // 用BufferedInputStream装载以确保输入流可以标记和重置位置
-        in = new BufferedInputStream(in);
-        in.mark(Integer.MAX_VALUE);
-        String md5Code = EncryptUtil.encryptByMd5(in);
-        in.reset();
-        String storageFilename = md5Code + extension; // 存储文件名
-        FssStoragePath fsp = new FssStoragePath(type, NetUtil.standardizeUrl(relativeDir), storageFilename);
+        return relativeDir;
+    }
+
+    private String write(FssAccessStrategy<I> strategy, String relativeDir, String storageFilename, String filename,
+            InputStream in) throws IOException {
+        FssStoragePath fsp = new FssStoragePath(strategy.getType(), NetUtil.standardizeUrl(relativeDir),
+                storageFilename);
         String contextPath = NetUtil.standardizeUrl(strategy.getContextPath());
         String storagePath = contextPath + fsp.getRelativePath();
+        writeContent(strategy, storagePath, filename, in);
+        authorizePublicRead(strategy, storagePath);
+        return fsp.getUrl();
+    }
 
+    private void writeContent(FssAccessStrategy<I> strategy, String storagePath, String filename, InputStream in)
+            throws IOException {
+        String type = strategy.getType();
         FssProvider provider = strategy.getProvider();
         FssAccessor accessor = this.accessors.get(provider);
-        accessor.write(in, storagePath, filename);
-        // 写好文件之后，如果访问策略是公开匿名可读，则还需要进行相应授权，不过本地自有提供商无需进行授权
+        long startTime = startTiming();
+        if (this.metrics.isEnabled()) {
+            CountingInputStream countingIn = new CountingInputStream(in);
+            accessor.write(countingIn, storagePath, filename);
+            this.metrics.recordBytes(FssMetrics.WRITE, type, provider, countingIn.getByteCount());
+        } else {
+            accessor.write(in, storagePath, filename);
+        }
+        recordTime(FssMetrics.WRITE, strategy, startTime);
+    }
+
+    /**
+     * 写好文件之后，如果访问策略是公开匿名可读，则还需要进行相应授权，不过本地自有提供商无需进行授权
+     */
+    private void authorizePublicRead(FssAccessStrategy<I> strategy, String storagePath) {
+        FssProvider provider = strategy.getProvider();
+        if (strategy.isPublicReadable() && provider != FssProvider.OWN) {
+            FssAuthorizer authorizer = this.authorizers.get(provider);
+            authorizer.authorizePublicRead(storagePath);
+        }
+    }
+
+    @Override
+    public String initChunkedUpload(String type, String scope, I userIdentity, long fileSize, String filename,
+            int chunkSize) throws IOException {
+        FssAccessStrategy<I> strategy = getStrategy(type);
+        FileUploadLimit uploadLimit = strategy.getUploadLimit(userIdentity);
+        String extension = uploadLimit.validate(fileSize, filename);
+        String relativeDir = getWritableRelativeDir(strategy, scope, userIdentity);
+        if (chunkSize <= 0 || (chunkSize < this.minChunkSize && chunkSize < fileSize)) {
+            throw new BusinessException(FssExceptionCodes.INVALID_CHUNK, chunkSize);
+        }
+        FssChunkedUpload upload = new FssChunkedUpload(this.chunkStagingDir, type, relativeDir,
+                String.valueOf(userIdentity), filename, extension, fileSize, chunkSize, this.digester);
+        this.chunkedUploads.put(upload.getId(), upload);
+        return upload.getId();
+    }
+
+    private void cleanExpiredChunkedUploads() {
+        try {
+            long expiredTime = System.currentTimeMillis() - this.chunkedUploadExpiredSeconds * 1000L;
+            this.chunkedUploads.values().removeIf(upload -> {
+                if (upload.getLastActiveTime() < expiredTime) {
+                    upload.clean();
+                    return true;
+                }
+                return false;
+            });
+            // 暂存目录以上传任务id命名，不属于任何上传任务的为此前运行中遗留的
+            File[] dirs = this.chunkStagingDir.listFiles(
+                    file -> !this.chunkedUploads.containsKey(file.getName()) && file.lastModified() < expiredTime);
+            if (dirs != null) {
+                for (File dir : dirs) {
+                    FileUtils.deleteQuietly(dir);
+                }
+            }
+        } catch (RuntimeException e) { // 避免异常导致定时清理终止
+            LogUtil.error(getClass(), e);
+        }
+    }
+
+    private FssChunkedUpload getChunkedUpload(I userIdentity, String uploadId) {
+        FssChunkedUpload upload = this.chunkedUploads.get(uploadId);
+        if (upload == null) {
+            throw new BusinessException(FssExceptionCodes.UPLOAD_NOT_FOUND, uploadId);
+        }
+        // 只有开始上传的用户才能继续上传
+        if (!upload.getUserKey().equals(String.valueOf(userIdentity))) {
+            throw new BusinessException(FssExceptionCodes.NO_WRITE_AUTHORITY);
+        }
+        return upload;
+    }
+
+    @Override
+    public void writeChunk(I userIdentity, String uploadId, int index, InputStream in) throws IOException {
+        getChunkedUpload(userIdentity, uploadId).writeChunk(index, in);
+    }
+
+    @Override
+    public int[] getReceivedChunks(I userIdentity, String uploadId) {
+        return getChunkedUpload(userIdentity, uploadId).getReceivedChunks();
+    }
+
+    @Override
+    public String completeChunkedUpload(I userIdentity, String uploadId) throws IOException {
+        FssChunkedUpload upload = getChunkedUpload(userIdentity, uploadId);
+        String digest = upload.getDigest(); // 摘要已随分片到达增量计算，此处无需重新读取
+        FssAccessStrategy<I> strategy = getStrategy(upload.getType());
+        String storageUrl;
+        try (InputStream in = upload.openStream()) {
+            storageUrl = write(strategy, upload.getRelativeDir(), digest + upload.getExtension(),
+                    upload.getFilename(), in);
+        }
+        this.chunkedUploads.remove(uploadId);
+        upload.clean();
+        return storageUrl;
+    }
+
+    @Override
+    public FssUploadPolicy getUploadPolicy(String type, String scope, I userIdentity, long fileSize,
+            String filename) {
+        FssAccessStrategy<I> strategy = getStrategy(type);
+        FssProvider provider = strategy.getProvider();
+        if (provider == FssProvider.OWN) { // 本地自有提供商不支持直传
+            return null;
+        }
+        // 上传限制校验，直传策略限定了文件大小不能超过此处校验过的大小
+        FileUploadLimit uploadLimit = strategy.getUploadLimit(userIdentity);
+        String extension = uploadLimit.validate(fileSize, filename);
+        String relativeDir = getWritableRelativeDir(strategy, scope, userIdentity);
+        // 直传时服务端无法预先计算内容摘要，故以随机标识作为存储文件名
+        String storageFilename = StringUtil.uuid32() + extension;
+        FssStoragePath fsp = new FssStoragePath(type, NetUtil.standardizeUrl(relativeDir), storageFilename);
+        String storagePath = NetUtil.standardizeUrl(strategy.getContextPath()) + fsp.getRelativePath();
+        FssAuthorizer authorizer = this.authorizers.get(provider);
+        FssUploadPolicy policy = authorizer.authorizeUpload(userIdentity, storagePath, filename, fileSize);
+        if (policy != null) {
+            policy.setStorageUrl(fsp.getUrl());
+        }
+        return policy;
+    }
+
+    @Override
+    public String completeUpload(String type, String scope, I userIdentity, String storageUrl) {
+        FssAccessStrategy<I> strategy = getStrategy(type);
+        FssStoragePath fsp = FssStoragePath.of(storageUrl);
+        String relativeDir = strategy.getRelativeDir(scope, userIdentity);
+        // 存储URL必须位于当前用户可写的目录下
+        if (fsp == null || !type.equals(fsp.getType()) || relativeDir == null
+                || !NetUtil.standardizeUrl(relativeDir).equals(fsp.getRelativeDir())) {
+            throw new BusinessException(FssExceptionCodes.NO_WRITE_AUTHORITY);
+        }
+        String storagePath = NetUtil.standardizeUrl(strategy.getContextPath()) + fsp.getRelativePath();
+        FssProvider provider = strategy.getProvider();
+        FssAccessor accessor = this.accessors.get(provider);
+        if (accessor.getLastModifiedTime(storagePath) == null) {
+            return null;
+        }
         if (strategy.isPublicReadable() && provider != FssProvider.OWN) {
             FssAuthorizer authorizer = this.authorizers.get(provider);
             authorizer.authorizePublicRead(storagePath);
@@ -105,25 +531,103 @@ public class FssServiceTemplateImpl<I extends UserIdentity<?>>
         return fsp == null ? storageUrl : getReadUrl(userIdentity, fsp, thumbnail);
     }
 
+    @Override
+    public String[] getReadUrls(I userIdentity, String[] storageUrls, boolean thumbnail) {
+        String[] readUrls = new String[storageUrls.length];
+        // 按业务类型分组，同一组内批量获取，同一相对目录的读权限只校验一次
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        Map<String, List<FssStoragePath>> groupFsps = new HashMap<>();
+        Map<String, Boolean> readableDirs = new HashMap<>();
+        for (int i = 0; i < storageUrls.length; i++) {
+            String storageUrl = storageUrls[i];
+            if (StringUtils.isNotBlank(storageUrl)) {
+                FssStoragePath fsp = FssStoragePath.of(storageUrl);
+                if (fsp == null) { // 不满足内部存储路径格式的，原样返回
+                    readUrls[i] = storageUrl;
+                } else if (readableDirs.computeIfAbsent(fsp.getType() + fsp.getRelativeDir(),
+                        dir -> isUserReadable(userIdentity, fsp))) { // 没有读权限的位置为null，不影响其它读取URL
+                    groups.computeIfAbsent(fsp.getType(), type -> new ArrayList<>()).add(i);
+                    groupFsps.computeIfAbsent(fsp.getType(), type -> new ArrayList<>()).add(fsp);
+                }
+            }
+        }
+        groups.forEach((type, indexes) -> {
+            FssAccessStrategy<I> strategy = this.strategies.get(type);
+            String[] urls = getReadUrls(userIdentity, strategy, groupFsps.get(type), thumbnail);
+            for (int i = 0; i < urls.length; i++) {
+                readUrls[indexes.get(i)] = urls[i];
+            }
+        });
+        return readUrls;
+    }
+
     private String getReadUrl(I userIdentity, FssStoragePath fsp, boolean thumbnail) {
         if (fsp != null && fsp.isValid()) {
             FssAccessStrategy<I> strategy = validateUserRead(userIdentity, fsp);
             FssProvider provider = strategy.getProvider();
             if (provider == FssProvider.OWN) {
                 // 本地自有提供商的读取URL与存储URL保持一致，以便于读取时判断所属访问策略
-                return fsp.toString();
+                return getOwnReadUrl(strategy, fsp, thumbnail);
             } else {
                 FssAuthorizer authorizer = this.authorizers.get(provider);
-                String path = strategy.getContextPath() + fsp.getRelativePath();
-                if (thumbnail) {
-                    path = appendThumbnailParameters(strategy, path);
-                }
-                return authorizer.getReadUrl(userIdentity, path);
+                String path = getReadPath(strategy, fsp, thumbnail);
+                long startTime = startTiming();
+                String readUrl = authorizer.getReadUrl(userIdentity, path);
+                recordTime(FssMetrics.READ_URL, strategy, startTime);
+                return readUrl;
             }
         }
         return null;
     }
 
+    private String getOwnReadUrl(FssAccessStrategy<I> strategy, FssStoragePath fsp, boolean thumbnail) {
+        String url = fsp.toString();
+        if (thumbnail && isThumbnailSupported(strategy)) { // 缩略图由自有访问器在读取时生成
+            url += Strings.QUESTION + THUMBNAIL_PARAMETER + "=true";
+        }
+        return url;
+    }
+
+    private boolean isThumbnailSupported(FssAccessStrategy<I> strategy) {
+        Map<String, String> thumbnailParameters = strategy.getThumbnailParameters();
+        return thumbnailParameters != null && thumbnailParameters.size() > 0;
+    }
+
+    private String getReadPath(FssAccessStrategy<I> strategy, FssStoragePath fsp, boolean thumbnail) {
+        String path = strategy.getContextPath() + fsp.getRelativePath();
+        if (thumbnail) {
+            path = appendThumbnailParameters(strategy, path);
+        }
+        return path;
+    }
+
+    /**
+     * 批量获取同一访问策略下的存储路径集的读取URL，调用前需已校验读权限
+     */
+    private String[] getReadUrls(I userIdentity, FssAccessStrategy<I> strategy, List<FssStoragePath> fsps,
+            boolean thumbnail) {
+        String[] readUrls = new String[fsps.size()];
+        FssProvider provider = strategy.getProvider();
+        if (provider == FssProvider.OWN) {
+            for (int i = 0; i < readUrls.length; i++) {
+                readUrls[i] = getOwnReadUrl(strategy, fsps.get(i), thumbnail);
+            }
+        } else {
+            List<String> paths = new ArrayList<>();
+            for (FssStoragePath fsp : fsps) {
+                paths.add(getReadPath(strategy, fsp, thumbnail));
+            }
+            FssAuthorizer authorizer = this.authorizers.get(provider);
+            long startTime = startTiming();
+            Map<String, String> urls = authorizer.getReadUrls(userIdentity, paths);
+            recordTime(FssMetrics.READ_URL, strategy, startTime);
+            for (int i = 0; i < readUrls.length; i++) {
+                readUrls[i] = urls.get(paths.get(i));
+            }
+        }
+        return readUrls;
+    }
+
     private String appendThumbnailParameters(FssAccessStrategy<I> strategy, String path) {
         if (strategy != null) {
             Map<String, String> thumbnailParameters = strategy.getThumbnailParameters();
@@ -147,16 +651,45 @@ public class FssServiceTemplateImpl<I extends UserIdentity<?>>
         return path;
     }
 
+    private boolean isUserReadable(I userIdentity, FssStoragePath fsp) {
+        if (fsp.isValid()) {
+            FssAccessStrategy<I> strategy = this.strategies.get(fsp.getType());
+            return strategy != null && isReadable(strategy, userIdentity, fsp.getRelativeDir());
+        }
+        return false;
+    }
+
     private FssAccessStrategy<I> validateUserRead(I userIdentity, FssStoragePath fsp) {
         if (fsp.isValid()) {
             FssAccessStrategy<I> strategy = this.strategies.get(fsp.getType());
-            if (strategy != null && strategy.isReadable(userIdentity, fsp.getRelativeDir())) {
+            if (strategy != null && isReadable(strategy, userIdentity, fsp.getRelativeDir())) {
                 return strategy;
             }
         }
         throw new BusinessException(FssExceptionCodes.NO_READ_AUTHORITY, fsp.getUrl());
     }
 
+    private boolean isReadable(FssAccessStrategy<I> strategy, I userIdentity, String relativeDir) {
+        Map<String, Boolean> scopedDecisions = FssReadDecisionScope.getCurrentDecisions();
+        if (scopedDecisions == null && this.readDecisionCacheSeconds <= 0) {
+            return strategy.isReadable(userIdentity, relativeDir);
+        }
+        String key = strategy.getType() + Strings.SPACE + relativeDir + Strings.SPACE + userIdentity;
+        Boolean readable = scopedDecisions == null ? null : scopedDecisions.get(key);
+        if (readable == null) {
+            if (this.readDecisionCacheSeconds > 0) {
+                readable = this.readDecisions.get(key, () -> strategy.isReadable(userIdentity, relativeDir),
+                        this.readDecisionCacheSeconds * 1000L, 0);
+            } else {
+                readable = strategy.isReadable(userIdentity, relativeDir);
+            }
+            if (scopedDecisions != null) {
+                scopedDecisions.put(key, readable);
+            }
+        }
+        return readable;
+    }
+
     @Override
     public FssFileMeta getMeta(I userIdentity, String storageUrl) {
         if (StringUtils.isNotBlank(storageUrl)) {
@@ -165,7 +698,9 @@ public class FssServiceTemplateImpl<I extends UserIdentity<?>>
                 FssAccessStrategy<I> strategy = validateUserRead(userIdentity, fsp);
                 FssAccessor accessor = this.accessors.get(strategy.getProvider());
                 String path = strategy.getContextPath() + fsp.getRelativePath();
+                long startTime = startTiming();
                 String filename = accessor.getOriginalFilename(path);
+                recordTime(FssMetrics.META, strategy, startTime);
                 if (filename != null) {
                     String thumbnailReadUrl = getReadUrl(userIdentity, fsp, true);
                     String readUrl = getReadUrl(userIdentity, fsp, false);
@@ -176,6 +711,77 @@ public class FssServiceTemplateImpl<I extends UserIdentity<?>>
         return null;
     }
 
+    @Override
+    public FssFileMeta[] getMetas(I userIdentity, String[] storageUrls) {
+        FssFileMeta[] metas = new FssFileMeta[storageUrls.length];
+        // 按业务类型分组，同一组内批量获取，同一相对目录的读权限只校验一次
+        Map<String, List<Integer>> groups = new LinkedHashMap<>();
+        FssStoragePath[] fsps = new FssStoragePath[storageUrls.length];
+        Map<String, Boolean> readableDirs = new HashMap<>();
+        for (int i = 0; i < storageUrls.length; i++) {
+            String storageUrl = storageUrls[i];
+            if (StringUtils.isNotBlank(storageUrl)) {
+                FssStoragePath fsp = FssStoragePath.of(storageUrl);
+                // 没有读权限的位置为null，不影响其它元信息
+                if (fsp != null && readableDirs.computeIfAbsent(fsp.getType() + fsp.getRelativeDir(),
+                        dir -> isUserReadable(userIdentity, fsp))) {
+                    fsps[i] = fsp;
+                    groups.computeIfAbsent(fsp.getType(), type -> new ArrayList<>()).add(i);
+                }
+            }
+        }
+        groups.forEach((type, indexes) -> {
+            FssAccessStrategy<I> strategy = this.strategies.get(type);
+            FssAccessor accessor = this.accessors.get(strategy.getProvider());
+            List<String> paths = new ArrayList<>();
+            for (int index : indexes) {
+                paths.add(strategy.getContextPath() + fsps[index].getRelativePath());
+            }
+            long startTime = startTiming();
+            Map<String, String> filenames = getOriginalFilenames(accessor, paths);
+            recordTime(FssMetrics.META, strategy, startTime);
+            // 只为存在的文件获取读取URL
+            List<Integer> existingIndexes = new ArrayList<>();
+            List<FssStoragePath> existingFsps = new ArrayList<>();
+            for (int i = 0; i < indexes.size(); i++) {
+                if (filenames.containsKey(paths.get(i))) {
+                    existingIndexes.add(indexes.get(i));
+                    existingFsps.add(fsps[indexes.get(i)]);
+                }
+            }
+            if (existingFsps.size() > 0) {
+                String[] thumbnailReadUrls = getReadUrls(userIdentity, strategy, existingFsps, true);
+                String[] readUrls = getReadUrls(userIdentity, strategy, existingFsps, false);
+                for (int i = 0; i < existingFsps.size(); i++) {
+                    int index = existingIndexes.get(i);
+                    String path = strategy.getContextPath() + existingFsps.get(i).getRelativePath();
+                    metas[index] = new FssFileMeta(filenames.get(path), storageUrls[index], readUrls[i],
+                            thumbnailReadUrls[i]);
+                }
+            }
+        });
+        return metas;
+    }
+
+    private Map<String, String> getOriginalFilenames(FssAccessor accessor, List<String> paths) {
+        int parallelism = Math.min(this.metaBatchParallelism, paths.size());
+        if (this.executor == null || parallelism <= 1) {
+            return accessor.getOriginalFilenames(paths);
+        }
+        // 均分为不超过最大并发数的若干片，各片并发获取
+        int sliceSize = (paths.size() + parallelism - 1) / parallelism;
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i += sliceSize) {
+            List<String> slice = paths.subList(i, Math.min(i + sliceSize, paths.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> accessor.getOriginalFilenames(slice), this.executor));
+        }
+        Map<String, String> filenames = new HashMap<>();
+        for (CompletableFuture<Map<String, String>> future : futures) {
+            filenames.putAll(future.join());
+        }
+        return filenames;
+    }
+
     @Override
     public Long getLastModifiedTime(I userIdentity, String path) {
         path = NetUtil.standardizeUrl(path);
@@ -190,15 +796,115 @@ public class FssServiceTemplateImpl<I extends UserIdentity<?>>
     }
 
     @Override
-    public void read(I userIdentity, String path, OutputStream out) throws IOException {
+    public void read(I userIdentity, String path, boolean thumbnail, OutputStream out) throws IOException {
+        path = NetUtil.standardizeUrl(path);
+        FssStoragePath fsp = FssStoragePath.of(path);
+        if (fsp != null) {
+            FssAccessStrategy<I> strategy = validateUserRead(userIdentity, fsp);
+            FssAccessor accessor = this.accessors.get(strategy.getProvider());
+            path = strategy.getContextPath() + fsp.getRelativePath();
+            long startTime = startTiming();
+            CountingOutputStream countingOut = null;
+            if (this.metrics.isEnabled()) {
+                out = countingOut = new CountingOutputStream(out);
+            }
+            if (thumbnail && isThumbnailSupported(strategy)) {
+                accessor.readThumbnail(path, strategy.getThumbnailParameters(), out);
+            } else {
+                accessor.read(path, out);
+            }
+            if (countingOut != null) {
+                this.metrics.recordBytes(FssMetrics.READ, strategy.getType(), strategy.getProvider(),
+                        countingOut.getByteCount());
+            }
+            recordTime(FssMetrics.READ, strategy, startTime);
+        }
+    }
+
+    @Override
+    public InputStream openStream(I userIdentity, String path, boolean thumbnail) throws IOException {
         path = NetUtil.standardizeUrl(path);
         FssStoragePath fsp = FssStoragePath.of(path);
         if (fsp != null) {
             FssAccessStrategy<I> strategy = validateUserRead(userIdentity, fsp);
             FssAccessor accessor = this.accessors.get(strategy.getProvider());
             path = strategy.getContextPath() + fsp.getRelativePath();
-            accessor.read(path, out);
+            if (thumbnail && isThumbnailSupported(strategy)) { // 缩略图通常较小，读入内存即可
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                if (accessor.readThumbnail(path, strategy.getThumbnailParameters(), out)) {
+                    return new ByteArrayInputStream(out.toByteArray());
+                }
+                return null;
+            }
+            return accessor.openStream(path);
+        }
+        return null;
+    }
+
+    @Override
+    public InputStream openEncodedStream(I userIdentity, String path, String encoding) throws IOException {
+        path = NetUtil.standardizeUrl(path);
+        FssStoragePath fsp = FssStoragePath.of(path);
+        if (fsp != null) {
+            FssAccessStrategy<I> strategy = validateUserRead(userIdentity, fsp);
+            FssAccessor accessor = this.accessors.get(strategy.getProvider());
+            return accessor.openEncodedStream(strategy.getContextPath() + fsp.getRelativePath(), encoding);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isEncodedStorage(String path, String encoding) {
+        FssStoragePath fsp = FssStoragePath.of(NetUtil.standardizeUrl(path));
+        if (fsp != null) {
+            FssAccessStrategy<I> strategy = getStrategy(fsp.getType());
+            FssAccessor accessor = this.accessors.get(strategy.getProvider());
+            return accessor.isEncodedStorage(strategy.getContextPath() + fsp.getRelativePath(), encoding);
+        }
+        return false;
+    }
+
+    /**
+     * 读取的同时更新摘要的输入流
+     */
+    private static class DigestingInputStream extends FilterInputStream {
+
+        private final FssDigester.Digest digest;
+
+        DigestingInputStream(InputStream in, FssDigester.Digest digest) {
+            super(in);
+            this.digest = digest;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                this.digest.update(new byte[] { (byte) b }, 0, 1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int count = super.read(b, off, len);
+            if (count > 0) {
+                this.digest.update(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // 跳过的内容也须计入摘要，故读取而非跳过
+            return IOUtils.skip(this, n);
         }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
     }
 
 }
@@ -18,8 +18,16 @@ public interface AliyunAccount {
 
     String getOssBucket();
 
+    /**
+     * @return 以账户凭证访问的OSS客户端，由账户负责复用和关闭，使用者无需关闭
+     */
     OSS getOssClient();
 
+    /**
+     * @return OSS客户端注册表，用于获取以临时凭证访问的OSS客户端
+     */
+    AliyunOssClientRegistry getOssClientRegistry();
+
     IAcsClient getAcsClient();
 
 }
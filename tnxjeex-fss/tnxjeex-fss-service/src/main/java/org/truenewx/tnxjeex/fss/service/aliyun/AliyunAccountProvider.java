@@ -22,8 +22,9 @@ public class AliyunAccountProvider implements AliyunAccount {
     private String ramRegion = "cn-hangzhou";
     private String accessKeyId;
     private String accessKeySecret;
-    private OSS oss;
-    private IAcsClient acsClient;
+    private int ossMaxConnections = 64;
+    private volatile AliyunOssClientRegistry ossClientRegistry;
+    private volatile IAcsClient acsClient;
 
     /**
      * @param accountId 阿里云账户编号
@@ -77,6 +78,13 @@ public class AliyunAccountProvider implements AliyunAccount {
         this.accessKeySecret = accessKeySecret;
     }
 
+    /**
+     * @param ossMaxConnections 每个OSS客户端的最大连接数，默认为64
+     */
+    public void setOssMaxConnections(int ossMaxConnections) {
+        this.ossMaxConnections = ossMaxConnections;
+    }
+
     @Override
     public String getAccountId() {
         return this.accountId;
@@ -94,21 +102,47 @@ public class AliyunAccountProvider implements AliyunAccount {
 
     @Override
     public OSS getOssClient() {
-        if (this.oss == null) {
-            this.oss = AliyunOssUtil.buildOss(this.ossEndpoint, this.accessKeyId,
-                    this.accessKeySecret);
+        return getOssClientRegistry().get(this.accessKeyId, this.accessKeySecret, null);
+    }
+
+    @Override
+    public AliyunOssClientRegistry getOssClientRegistry() {
+        if (this.ossClientRegistry == null) {
+            synchronized (this) {
+                if (this.ossClientRegistry == null) {
+                    AliyunOssClientRegistry registry = new AliyunOssClientRegistry(this.ossEndpoint);
+                    registry.setMaxConnections(this.ossMaxConnections);
+                    this.ossClientRegistry = registry;
+                }
+            }
         }
-        return this.oss;
+        return this.ossClientRegistry;
     }
 
     @Override
     public IAcsClient getAcsClient() {
         if (this.acsClient == null) {
-            IClientProfile profile = DefaultProfile.getProfile(this.ramRegion,
-                    this.accessKeyId, this.accessKeySecret);
-            this.acsClient = new DefaultAcsClient(profile);
+            synchronized (this) {
+                if (this.acsClient == null) {
+                    IClientProfile profile = DefaultProfile.getProfile(this.ramRegion,
+                            this.accessKeyId, this.accessKeySecret);
+                    this.acsClient = new DefaultAcsClient(profile);
+                }
+            }
         }
         return this.acsClient;
     }
 
+    /**
+     * 关闭已创建的全部客户端，作为Spring Bean时在容器关闭时自动调用
+     */
+    public void shutdown() {
+        if (this.ossClientRegistry != null) {
+            this.ossClientRegistry.shutdown();
+        }
+        if (this.acsClient != null) {
+            this.acsClient.shutdown();
+        }
+    }
+
 }
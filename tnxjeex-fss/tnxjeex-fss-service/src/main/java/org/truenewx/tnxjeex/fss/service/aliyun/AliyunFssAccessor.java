@@ -1,31 +1,131 @@
 package org.truenewx.tnxjeex.fss.service.aliyun;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.truenewx.tnxjee.core.Strings;
 import org.truenewx.tnxjee.core.util.EncryptUtil;
 import org.truenewx.tnxjeex.fss.service.FssAccessor;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetrics;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetricsAware;
 import org.truenewx.tnxjeex.fss.service.model.FssProvider;
 
 import com.aliyun.oss.ClientException;
-import com.aliyun.oss.model.ObjectMetadata;
+import com.aliyun.oss.OSS;
+import com.aliyun.oss.OSSErrorCode;
+import com.aliyun.oss.OSSException;
+import com.aliyun.oss.model.*;
 
 /**
  * 阿里云的文件存储访问器
  *
  * @author jianglei
  */
-public class AliyunFssAccessor implements FssAccessor {
+public class AliyunFssAccessor implements FssAccessor, FssMetricsAware {
+
+    /**
+     * 阿里云单次列出或批量删除的最大对象数
+     */
+    private static final int MAX_BATCH_KEYS = 1000;
+    private static final int INITIAL_PART_BUFFER_SIZE = 64 * 1024;
 
     private AliyunAccount account;
+    private int partSize = 8 * 1024 * 1024; // 分片大小默认8MB
+    private int partParallelism = 4;
+    private int partRetries = 2;
+    private Executor executor;
+    private ExecutorService defaultExecutor; // 未设置线程池时内置的分片上传线程池
+    private FssMetrics metrics = FssMetrics.NONE;
 
     public AliyunFssAccessor(AliyunAccount account) {
         this.account = account;
     }
 
+    /**
+     * 设置分片大小，同时也是分片上传的文件大小阈值，不足一个分片大小的文件直接上传。
+     * 阿里云限定除最后一个分片外，分片大小不能小于100KB，且分片数量不能超过10000
+     *
+     * @param partSize 分片大小，小于等于0时不进行分片上传
+     */
+    public void setPartSize(int partSize) {
+        this.partSize = partSize;
+    }
+
+    /**
+     * @param partParallelism 最大并发上传的分片数，同时决定了上传过程中缓存的分片数量
+     */
+    public void setPartParallelism(int partParallelism) {
+        this.partParallelism = partParallelism;
+    }
+
+    /**
+     * @param partRetries 单个分片上传失败后的重试次数
+     */
+    public void setPartRetries(int partRetries) {
+        this.partRetries = partRetries;
+    }
+
+    /**
+     * @param executor 并发上传分片的线程池，未设置时使用内置的线程池，其线程数为最大并发上传的分片数
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void setMetrics(FssMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    private Executor getExecutor() {
+        if (this.executor == null) {
+            synchronized (this) {
+                if (this.executor == null) {
+                    AtomicInteger threadNo = new AtomicInteger();
+                    int poolSize = Math.max(1, this.partParallelism);
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "fss-aliyun-part-" + threadNo.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    executor.allowCoreThreadTimeOut(true); // 空闲时不占用线程
+                    this.defaultExecutor = executor;
+                    this.executor = executor;
+                }
+            }
+        }
+        return this.executor;
+    }
+
+    /**
+     * 关闭内置的分片上传线程池
+     */
+    public synchronized void shutdown() {
+        if (this.defaultExecutor != null) {
+            this.defaultExecutor.shutdown();
+        }
+    }
+
     @Override
     public FssProvider getProvider() {
         return FssProvider.ALIYUN;
@@ -39,9 +139,121 @@ public class AliyunFssAccessor implements FssAccessor {
             objectMetadata.getUserMetadata().put("filename", filename);
         }
         path = AliyunOssUtil.standardizePath(path);
+        if (this.partSize > 0) {
+            byte[] firstPart = readPart(in, INITIAL_PART_BUFFER_SIZE);
+            if (firstPart.length == this.partSize) { // 达到一个分片大小的，分片上传
+                writeMultipart(in, path, objectMetadata, firstPart);
+                return;
+            }
+            in = new ByteArrayInputStream(firstPart);
+        }
         this.account.getOssClient().putObject(this.account.getOssBucket(), path, in, objectMetadata);
     }
 
+    /**
+     * 读取一个分片的内容，缓冲区从指定容量开始按需倍增至分片大小，以免小文件也分配整个分片大小的内存
+     */
+    private byte[] readPart(InputStream in, int initialCapacity) throws IOException {
+        byte[] buffer = new byte[Math.min(initialCapacity, this.partSize)];
+        int length = 0;
+        while (true) {
+            length += IOUtils.read(in, buffer, length, buffer.length - length);
+            if (length < buffer.length || length == this.partSize) { // 已读到末尾或已满一个分片
+                break;
+            }
+            buffer = Arrays.copyOf(buffer, (int) Math.min(buffer.length * 2L, this.partSize));
+        }
+        return length < buffer.length ? Arrays.copyOf(buffer, length) : buffer;
+    }
+
+    private void writeMultipart(InputStream in, String path, ObjectMetadata objectMetadata, byte[] firstPart)
+            throws IOException {
+        OSS oss = this.account.getOssClient();
+        String bucket = this.account.getOssBucket();
+        InitiateMultipartUploadRequest initiateRequest = new InitiateMultipartUploadRequest(bucket, path,
+                objectMetadata);
+        String uploadId = oss.initiateMultipartUpload(initiateRequest).getUploadId();
+        try {
+            // 限定同时在上传中的分片数，以限制内存占用
+            Semaphore permits = new Semaphore(Math.max(1, this.partParallelism));
+            Executor executor = getExecutor();
+            AtomicBoolean failed = new AtomicBoolean();
+            List<CompletableFuture<PartETag>> futures = new ArrayList<>();
+            byte[] part = firstPart;
+            int partNumber = 1;
+            while (part.length > 0) {
+                permits.acquire();
+                byte[] data = part;
+                int number = partNumber;
+                CompletableFuture<PartETag> future = CompletableFuture.supplyAsync(
+                        () -> uploadPart(oss, bucket, path, uploadId, number, data), executor);
+                future.whenComplete((partETag, e) -> {
+                    if (e != null) {
+                        failed.set(true);
+                    }
+                    permits.release();
+                });
+                futures.add(future);
+                if (failed.get()) { // 已有分片最终失败则无需继续读取
+                    break;
+                }
+                part = readPart(in, this.partSize); // 已知为大文件，直接按分片大小读取
+                partNumber++;
+            }
+            List<PartETag> partETags = new ArrayList<>();
+            for (CompletableFuture<PartETag> future : futures) {
+                partETags.add(future.join());
+            }
+            oss.completeMultipartUpload(new CompleteMultipartUploadRequest(bucket, path, uploadId, partETags));
+        } catch (Exception e) {
+            oss.abortMultipartUpload(new AbortMultipartUploadRequest(bucket, path, uploadId));
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private PartETag uploadPart(OSS oss, String bucket, String path, String uploadId, int partNumber, byte[] data) {
+        RuntimeException exception = null;
+        for (int i = 0; i <= this.partRetries; i++) {
+            UploadPartRequest request = new UploadPartRequest();
+            request.setBucketName(bucket);
+            request.setKey(path);
+            request.setUploadId(uploadId);
+            request.setPartNumber(partNumber);
+            request.setInputStream(new ByteArrayInputStream(data));
+            request.setPartSize(data.length);
+            try {
+                if (i > 0) {
+                    this.metrics.increment(FssMetrics.PART_RETRY, getProvider());
+                }
+                return oss.uploadPart(request).getPartETag();
+            } catch (OSSException e) {
+                if (!isTransient(e)) { // 权限不足、存储桶不存在等错误重试无意义
+                    throw e;
+                }
+                exception = e;
+            } catch (ClientException e) { // 网络抖动等导致的失败，重新上传当前分片
+                exception = e;
+            }
+        }
+        throw exception;
+    }
+
+    /**
+     * 判断服务端错误是否为可重试的暂时性错误
+     */
+    private boolean isTransient(OSSException e) {
+        String errorCode = e.getErrorCode();
+        return OSSErrorCode.INTERNAL_ERROR.equals(errorCode) || OSSErrorCode.REQUEST_TIMEOUT.equals(errorCode)
+                || "ServiceUnavailable".equals(errorCode);
+    }
+
     @Override
     public String getOriginalFilename(String path) {
         try {
@@ -85,4 +297,98 @@ public class AliyunFssAccessor implements FssAccessor {
         }
     }
 
+    @Override
+    public InputStream openStream(String path) throws IOException {
+        try {
+            path = AliyunOssUtil.standardizePath(path);
+            return this.account.getOssClient().getObject(this.account.getOssBucket(), path).getObjectContent();
+        } catch (ClientException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public boolean isListSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean isDeleteSupported() {
+        return true;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<String> consumer) {
+        OSS oss = this.account.getOssClient();
+        ListObjectsRequest request = new ListObjectsRequest(this.account.getOssBucket());
+        request.setPrefix(AliyunOssUtil.standardizePath(prefix));
+        request.setMaxKeys(MAX_BATCH_KEYS);
+        ObjectListing listing;
+        do {
+            listing = oss.listObjects(request);
+            for (OSSObjectSummary summary : listing.getObjectSummaries()) {
+                consumer.accept(Strings.SLASH + summary.getKey());
+            }
+            request.setMarker(listing.getNextMarker());
+        } while (listing.isTruncated());
+    }
+
+    @Override
+    public void delete(Collection<String> paths) {
+        OSS oss = this.account.getOssClient();
+        String bucket = this.account.getOssBucket();
+        List<String> keys = new ArrayList<>();
+        for (String path : paths) {
+            keys.add(AliyunOssUtil.standardizePath(path));
+            if (keys.size() == MAX_BATCH_KEYS) {
+                oss.deleteObjects(new DeleteObjectsRequest(bucket).withKeys(keys).withQuiet(true));
+                keys = new ArrayList<>();
+            }
+        }
+        if (keys.size() > 0) {
+            oss.deleteObjects(new DeleteObjectsRequest(bucket).withKeys(keys).withQuiet(true));
+        }
+    }
+
+    @Override
+    public boolean copy(String sourcePath, String targetPath) {
+        // 服务端复制，同时复制包括原始文件名在内的元数据
+        OSS oss = this.account.getOssClient();
+        String bucket = this.account.getOssBucket();
+        try {
+            oss.copyObject(bucket, AliyunOssUtil.standardizePath(sourcePath), bucket,
+                    AliyunOssUtil.standardizePath(targetPath));
+            return true;
+        } catch (OSSException e) {
+            if (OSSErrorCode.NO_SUCH_KEY.equals(e.getErrorCode())) {
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public int purgeTemp(long expiredTime) {
+        // 中断的分片上传遗留的分片会持续占用存储空间，予以中止
+        OSS oss = this.account.getOssClient();
+        String bucket = this.account.getOssBucket();
+        int count = 0;
+        ListMultipartUploadsRequest request = new ListMultipartUploadsRequest(bucket);
+        request.setMaxUploads(MAX_BATCH_KEYS);
+        MultipartUploadListing listing;
+        do {
+            listing = oss.listMultipartUploads(request);
+            for (MultipartUpload upload : listing.getMultipartUploads()) {
+                if (upload.getInitiated().getTime() < expiredTime) {
+                    oss.abortMultipartUpload(
+                            new AbortMultipartUploadRequest(bucket, upload.getKey(), upload.getUploadId()));
+                    count++;
+                }
+            }
+            request.setKeyMarker(listing.getNextKeyMarker());
+            request.setUploadIdMarker(listing.getNextUploadIdMarker());
+        } while (listing.isTruncated());
+        return count;
+    }
+
 }
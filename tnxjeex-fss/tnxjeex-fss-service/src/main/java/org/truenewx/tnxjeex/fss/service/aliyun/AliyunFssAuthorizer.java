@@ -1,19 +1,25 @@
 package org.truenewx.tnxjeex.fss.service.aliyun;
 
-import java.util.Date;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Executor;
 
+import org.apache.commons.lang3.StringUtils;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
 import org.truenewx.tnxjee.core.Strings;
 import org.truenewx.tnxjee.core.util.DateUtil;
+import org.truenewx.tnxjee.core.util.EncryptUtil;
 import org.truenewx.tnxjee.model.spec.user.UserIdentity;
+import org.truenewx.tnxjeex.fss.model.FssUploadPolicy;
 import org.truenewx.tnxjeex.fss.service.FssAuthorizer;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetrics;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetricsAware;
 import org.truenewx.tnxjeex.fss.service.model.FssProvider;
+import org.truenewx.tnxjeex.fss.service.util.FssExpirableCache;
 
 import com.aliyun.oss.OSS;
-import com.aliyun.oss.model.CannedAccessControlList;
-import com.aliyun.oss.model.GeneratePresignedUrlRequest;
-import com.aliyun.oss.model.ObjectAcl;
-import com.aliyun.oss.model.ObjectPermission;
+import com.aliyun.oss.model.*;
 import com.aliyuncs.auth.sts.AssumeRoleResponse;
 
 /**
@@ -21,16 +27,31 @@ import com.aliyuncs.auth.sts.AssumeRoleResponse;
  *
  * @author jianglei
  */
-public class AliyunFssAuthorizer implements FssAuthorizer {
+public class AliyunFssAuthorizer implements FssAuthorizer, FssMetricsAware {
+
+    /**
+     * STS限定的授权方针文档最大长度
+     */
+    private static final int MAX_POLICY_DOCUMENT_LENGTH = 1024;
 
     private int tempReadExpiredSeconds = 60; // 临时读取时限默认60秒
+    private int tempWriteExpiredSeconds = 600; // 临时直传时限默认10分钟
+    private int aclCacheSeconds = 300; // 对象访问权限缓存时限默认5分钟
+    private int refreshAheadSeconds = 60; // 临时凭证在失效前60秒开始提前刷新
+    private boolean dirScopedReadPolicy; // 默认按单个文件授权，与此前的授权范围一致
     private AliyunAccount account;
     private AliyunPolicyBuilder policyBuilder;
     private AliyunStsRoleAssumer readStsRoleAssumer;
+    private AliyunStsRoleAssumer writeStsRoleAssumer;
+    private FssExpirableCache<String, ReadSigner> readSigners = new FssExpirableCache<>(1000);
+    private FssExpirableCache<String, Boolean> publicReads = new FssExpirableCache<>(10000);
+    private FssMetrics metrics = FssMetrics.NONE;
 
     public AliyunFssAuthorizer(AliyunAccount account) {
         this.account = account;
         this.policyBuilder = new AliyunPolicyBuilder(account);
+        // 临时凭证不再使用时及时关闭其客户端
+        this.readSigners.setRemovalListener(signer -> account.getOssClientRegistry().remove(signer.accessKeyId));
     }
 
     /**
@@ -38,6 +59,56 @@ public class AliyunFssAuthorizer implements FssAuthorizer {
      */
     public void setTempReadExpiredSeconds(int tempReadExpiredSeconds) {
         this.tempReadExpiredSeconds = tempReadExpiredSeconds;
+        validateReadExpiration();
+    }
+
+    /**
+     * 签名URL的有效期须短于临时凭证的有效期，否则读取签名器无法缓存，每次签名都需扮演角色
+     */
+    private void validateReadExpiration() {
+        if (this.readStsRoleAssumer != null) {
+            Assert.isTrue(this.tempReadExpiredSeconds < this.readStsRoleAssumer.getDurationSeconds(),
+                    "tempReadExpiredSeconds must be less than the duration seconds of read sts role");
+        }
+    }
+
+    /**
+     * @param tempWriteExpiredSeconds 直传策略的过期秒数
+     */
+    public void setTempWriteExpiredSeconds(int tempWriteExpiredSeconds) {
+        this.tempWriteExpiredSeconds = tempWriteExpiredSeconds;
+    }
+
+    /**
+     * @param aclCacheSeconds 对象访问权限的缓存秒数，小于等于0时不缓存
+     */
+    public void setAclCacheSeconds(int aclCacheSeconds) {
+        this.aclCacheSeconds = aclCacheSeconds;
+    }
+
+    /**
+     * @param refreshAheadSeconds 临时凭证在失效前提前刷新的秒数
+     */
+    public void setRefreshAheadSeconds(int refreshAheadSeconds) {
+        this.refreshAheadSeconds = refreshAheadSeconds;
+    }
+
+    /**
+     * @param refreshExecutor 提前刷新临时凭证时扮演角色的线程池，默认为各缓存共用的小线程池
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.readSigners.setRefreshExecutor(refreshExecutor);
+    }
+
+    /**
+     * 设置是否按目录授予临时读取权限。访问策略对读权限的判断以相对目录为单位，故服务端校验通过后，
+     * 按文件所在目录授权与按单个文件授权等效，而同一目录下的多个文件可复用同一组临时凭证，大幅减少角色扮演次数。
+     * 临时凭证仅用于服务端签名，不会下发给客户端。开启后临时凭证的授权范围由单个文件扩大为其所在目录，故须显式开启
+     *
+     * @param dirScopedReadPolicy 是否按目录授予临时读取权限，默认为false
+     */
+    public void setDirScopedReadPolicy(boolean dirScopedReadPolicy) {
+        this.dirScopedReadPolicy = dirScopedReadPolicy;
     }
 
     /**
@@ -45,6 +116,27 @@ public class AliyunFssAuthorizer implements FssAuthorizer {
      */
     public void setReadStsRoleName(String readStsRoleName) {
         this.readStsRoleAssumer = new AliyunStsRoleAssumer(this.account, readStsRoleName);
+        validateReadExpiration();
+    }
+
+    /**
+     * 设置写权限的STS临时扮演的RAM角色名称，设置后才支持直传，直传策略以仅可写指定资源的临时凭证签名
+     *
+     * @param writeStsRoleName 写权限的STS临时扮演的RAM角色名称
+     */
+    public void setWriteStsRoleName(String writeStsRoleName) {
+        this.writeStsRoleAssumer = new AliyunStsRoleAssumer(this.account, writeStsRoleName);
+    }
+
+    @Override
+    public void setMetrics(FssMetrics metrics) {
+        this.metrics = metrics;
+        FssProvider provider = getProvider();
+        metrics.registerGauge(FssMetrics.READ_SIGNER_CACHE_HITS, provider, this.readSigners::getHitCount);
+        metrics.registerGauge(FssMetrics.READ_SIGNER_CACHE_MISSES, provider, this.readSigners::getMissCount);
+        metrics.registerGauge(FssMetrics.ACL_CACHE_HITS, provider, this.publicReads::getHitCount);
+        metrics.registerGauge(FssMetrics.ACL_CACHE_MISSES, provider, this.publicReads::getMissCount);
+        metrics.registerGauge(FssMetrics.OSS_CLIENTS, provider, () -> this.account.getOssClientRegistry().size());
     }
 
     @Override
@@ -56,13 +148,63 @@ public class AliyunFssAuthorizer implements FssAuthorizer {
     public void authorizePublicRead(String path) {
         path = AliyunOssUtil.standardizePath(path);
         this.account.getOssClient().setObjectAcl(this.account.getOssBucket(), path, CannedAccessControlList.PublicRead);
+        // 写入时即已知访问权限，缓存以免读取时再远程获取
+        this.publicReads.put(path, Boolean.TRUE, this.aclCacheSeconds * 1000L);
     }
 
-    private boolean isPublicRead(String path) {
+    @Override
+    public FssUploadPolicy authorizeUpload(UserIdentity<?> userIdentity, String path, String filename,
+            long maxSize) {
+        if (this.writeStsRoleAssumer == null) { // 未配置写权限角色时不支持直传，以免暴露账号凭证的签名能力
+            return null;
+        }
         path = AliyunOssUtil.standardizePath(path);
-        ObjectAcl acl = this.account.getOssClient().getObjectAcl(this.account.getOssBucket(), path);
-        ObjectPermission permission = acl.getPermission();
-        return permission == ObjectPermission.PublicRead || permission == ObjectPermission.PublicReadWrite;
+        String policyDocument = this.policyBuilder.buildWriteDocument(this.account.getOssBucket(), path);
+        this.metrics.increment(FssMetrics.STS_CALL, getProvider());
+        AssumeRoleResponse.Credentials credentials = this.writeStsRoleAssumer.assumeRole(userIdentity.toString(),
+                policyDocument);
+        if (credentials == null) {
+            return null;
+        }
+        AliyunOssClientRegistry registry = this.account.getOssClientRegistry();
+        OSS oss = registry.get(credentials.getAccessKeyId(), credentials.getAccessKeySecret(),
+                credentials.getSecurityToken());
+        try {
+            // 限定只能上传到指定路径，且文件大小不超过已校验的大小
+            PolicyConditions conditions = new PolicyConditions();
+            conditions.addConditionItem(MatchMode.Exact, PolicyConditions.COND_KEY, path);
+            conditions.addConditionItem(PolicyConditions.COND_CONTENT_LENGTH_RANGE, 0, maxSize);
+            Date expiration = DateUtil.addSeconds(new Date(), this.tempWriteExpiredSeconds);
+            String postPolicy = oss.generatePostPolicy(expiration, conditions);
+
+            String host = "//" + this.account.getOssBucket() + Strings.DOT + this.account.getOssEndpoint();
+            FssUploadPolicy policy = new FssUploadPolicy(host, expiration.getTime());
+            Map<String, String> formData = policy.getFormData();
+            formData.put("key", path);
+            formData.put("policy", Base64.getEncoder().encodeToString(postPolicy.getBytes(StandardCharsets.UTF_8)));
+            formData.put("OSSAccessKeyId", credentials.getAccessKeyId());
+            formData.put("Signature", oss.calculatePostSignature(postPolicy));
+            formData.put("x-oss-security-token", credentials.getSecurityToken());
+            formData.put("success_action_status", "200");
+            if (StringUtils.isNotBlank(filename)) {
+                // 与服务端上传保持一致，以便读取原始文件名
+                formData.put("x-oss-meta-filename", EncryptUtil.encryptByBase64(filename));
+            }
+            return policy;
+        } finally {
+            registry.remove(credentials.getAccessKeyId()); // 临时凭证仅用于本次直传，无需复用
+        }
+    }
+
+    private boolean isPublicRead(String path) {
+        String standardPath = AliyunOssUtil.standardizePath(path);
+        Boolean publicRead = this.publicReads.get(standardPath, () -> {
+            this.metrics.increment(FssMetrics.ACL_LOOKUP, getProvider());
+            ObjectAcl acl = this.account.getOssClient().getObjectAcl(this.account.getOssBucket(), standardPath);
+            ObjectPermission permission = acl.getPermission();
+            return permission == ObjectPermission.PublicRead || permission == ObjectPermission.PublicReadWrite;
+        }, this.aclCacheSeconds * 1000L, 0);
+        return publicRead;
     }
 
     protected String getReadHost() {
@@ -71,7 +213,115 @@ public class AliyunFssAuthorizer implements FssAuthorizer {
 
     @Override
     public String getReadUrl(UserIdentity<?> userIdentity, String path) {
-        path = AliyunOssUtil.standardizePath(path);
+        return getReadUrls(userIdentity, Collections.singletonList(path)).get(path);
+    }
+
+    @Override
+    public Map<String, String> getReadUrls(UserIdentity<?> userIdentity, Collection<String> paths) {
+        Map<String, String> readUrls = new HashMap<>();
+        Map<String, String> privatePaths = new LinkedHashMap<>(); // 原始路径-标准化路径，均为非公开可读的
+        for (String path : paths) {
+            String standardPath = AliyunOssUtil.standardizePath(path);
+            try {
+                if (isPublicRead(getObjectPath(standardPath))) {
+                    // 以双斜杠开头，表示采用当前上下文的相同协议
+                    readUrls.put(path, "//" + getReadHost() + Strings.SLASH + standardPath);
+                } else if (this.readStsRoleAssumer != null) { // 非公开可读的，授予临时读取权限
+                    privatePaths.put(path, standardPath);
+                }
+            } catch (Exception e) {
+                LoggerFactory.getLogger(getClass()).error(e.getMessage(), e);
+            }
+        }
+        // 受授权方针文档长度限制，可能需拆分为多批，每批只扮演一次角色并复用同一组临时凭证
+        for (Map<String, String> batch : splitByPolicyDocument(privatePaths)) {
+            try {
+                signReadUrls(userIdentity, batch, readUrls);
+            } catch (Exception e) {
+                LoggerFactory.getLogger(getClass()).error(e.getMessage(), e);
+            }
+        }
+        return readUrls;
+    }
+
+    /**
+     * 获取不带参数的对象路径
+     */
+    private String getObjectPath(String path) {
+        int index = path.indexOf(Strings.QUESTION);
+        return index >= 0 ? path.substring(0, index) : path;
+    }
+
+    /**
+     * 获取指定对象路径在授权方针中的资源路径，按目录授权时为以/结尾的所在目录
+     */
+    private String getReadResourcePath(String objectPath) {
+        if (this.dirScopedReadPolicy) {
+            int index = objectPath.lastIndexOf(Strings.SLASH);
+            if (index > 0) {
+                return objectPath.substring(0, index + 1);
+            }
+        }
+        return objectPath;
+    }
+
+    private List<Map<String, String>> splitByPolicyDocument(Map<String, String> paths) {
+        List<Map<String, String>> batches = new ArrayList<>();
+        Map<String, String> batch = new LinkedHashMap<>();
+        Set<String> resourcePaths = new LinkedHashSet<>();
+        for (Map.Entry<String, String> entry : paths.entrySet()) {
+            String resourcePath = getReadResourcePath(getObjectPath(entry.getValue()));
+            if (resourcePaths.add(resourcePath) && resourcePaths.size() > 1
+                    && this.policyBuilder.buildReadDocument(resourcePaths).length() > MAX_POLICY_DOCUMENT_LENGTH) {
+                batches.add(batch);
+                batch = new LinkedHashMap<>();
+                resourcePaths.clear();
+                resourcePaths.add(resourcePath);
+            }
+            batch.put(entry.getKey(), entry.getValue());
+        }
+        if (batch.size() > 0) {
+            batches.add(batch);
+        }
+        return batches;
+    }
+
+    private void signReadUrls(UserIdentity<?> userIdentity, Map<String, String> paths, Map<String, String> readUrls) {
+        Set<String> resourcePaths = new TreeSet<>(); // 排序以确保相同资源集的授权方针文档一致，进而复用缓存的临时凭证
+        for (String standardPath : paths.values()) {
+            resourcePaths.add(getReadResourcePath(getObjectPath(standardPath)));
+        }
+        String policyDocument = this.policyBuilder.buildReadDocument(resourcePaths);
+        ReadSigner signer = getReadSigner(userIdentity.toString(), policyDocument);
+        if (signer != null) {
+            Date expiration = DateUtil.addSeconds(new Date(), this.tempReadExpiredSeconds);
+            paths.forEach((path, standardPath) -> {
+                String url = generatePresignedUrl(signer.getOss(), standardPath, expiration);
+                readUrls.put(path, replaceHost(url, getReadHost()));
+            });
+        }
+    }
+
+    /**
+     * 获取指定用户在指定授权方针下的读取签名器，同一用户在同一授权方针下复用临时凭证和签名客户端，使签名成为本地运算。
+     * 按目录授权时，同一用户读取同一目录下的任意文件均可命中缓存
+     */
+    private ReadSigner getReadSigner(String roleSessionName, String policyDocument) {
+        // 签名URL的有效期不能超出临时凭证的有效期，故缓存时限需扣除签名URL的有效期
+        long expiredMillis = (this.readStsRoleAssumer.getDurationSeconds() - this.tempReadExpiredSeconds) * 1000;
+        String key = roleSessionName + Strings.SPACE + policyDocument;
+        return this.readSigners.get(key, () -> {
+            this.metrics.increment(FssMetrics.STS_CALL, getProvider());
+            AssumeRoleResponse.Credentials credentials = this.readStsRoleAssumer.assumeRole(roleSessionName,
+                    policyDocument);
+            if (credentials != null) {
+                return new ReadSigner(credentials);
+            }
+            return null;
+        }, expiredMillis, this.refreshAheadSeconds * 1000L);
+    }
+
+    private String generatePresignedUrl(OSS oss, String path, Date expiration) {
         // 拆分请求参数，确保路径不带参数
         int index = path.indexOf(Strings.QUESTION);
         String parameterString = Strings.EMPTY;
@@ -79,43 +329,18 @@ public class AliyunFssAuthorizer implements FssAuthorizer {
             parameterString = path.substring(index + 1);
             path = path.substring(0, index);
         }
-        try {
-            if (isPublicRead(path)) {
-                // 以双斜杠开头，表示采用当前上下文的相同协议
-                StringBuilder url = new StringBuilder("//").append(getReadHost()).append(Strings.SLASH).append(path);
-                if (parameterString.length() > 0) {
-                    url.append(Strings.QUESTION).append(parameterString);
-                }
-                return url.toString();
-            } else if (this.readStsRoleAssumer != null) { // 非公开可读的，授予临时读取权限
-                String policyDocument = this.policyBuilder.buildReadDocument(path);
-                AssumeRoleResponse.Credentials credentials = this.readStsRoleAssumer.assumeRole(userIdentity.toString(),
-                        policyDocument);
-                if (credentials != null) {
-                    OSS oss = AliyunOssUtil.buildOss(this.account.getOssEndpoint(), credentials.getAccessKeyId(),
-                            credentials.getAccessKeySecret(), credentials.getSecurityToken());
-                    GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(this.account.getOssBucket(),
-                            path);
-                    Date expiration = DateUtil.addSeconds(new Date(), this.tempReadExpiredSeconds);
-                    request.setExpiration(expiration);
-                    if (parameterString.length() > 0) {
-                        String[] params = parameterString.split(Strings.AND);
-                        for (String param : params) {
-                            String[] array = param.split(Strings.EQUAL);
-                            if (array.length > 1) {
-                                request.addQueryParameter(array[0], array[1]);
-                            }
-                        }
-                    }
-                    String url = oss.generatePresignedUrl(request).toString();
-                    url = replaceHost(url, getReadHost());
-                    return url;
+        GeneratePresignedUrlRequest request = new GeneratePresignedUrlRequest(this.account.getOssBucket(), path);
+        request.setExpiration(expiration);
+        if (parameterString.length() > 0) {
+            String[] params = parameterString.split(Strings.AND);
+            for (String param : params) {
+                String[] array = param.split(Strings.EQUAL);
+                if (array.length > 1) {
+                    request.addQueryParameter(array[0], array[1]);
                 }
             }
-        } catch (Exception e) {
-            LoggerFactory.getLogger(getClass()).error(e.getMessage(), e);
         }
-        return null;
+        return oss.generatePresignedUrl(request).toString();
     }
 
     private String replaceHost(String url, String host) {
@@ -125,4 +350,26 @@ public class AliyunFssAuthorizer implements FssAuthorizer {
         return protocol + "://" + host + url;
     }
 
+    /**
+     * 读取签名器，持有临时凭证，每次签名时从注册表中获取客户端，客户端因闲置被关闭后可自动重建
+     */
+    private class ReadSigner {
+
+        private final String accessKeyId;
+        private final String accessKeySecret;
+        private final String securityToken;
+
+        ReadSigner(AssumeRoleResponse.Credentials credentials) {
+            this.accessKeyId = credentials.getAccessKeyId();
+            this.accessKeySecret = credentials.getAccessKeySecret();
+            this.securityToken = credentials.getSecurityToken();
+        }
+
+        OSS getOss() {
+            return AliyunFssAuthorizer.this.account.getOssClientRegistry()
+                    .get(this.accessKeyId, this.accessKeySecret, this.securityToken);
+        }
+
+    }
+
 }
@@ -0,0 +1,154 @@
+package org.truenewx.tnxjeex.fss.service.aliyun;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.util.Assert;
+
+import com.aliyun.oss.ClientConfiguration;
+import com.aliyun.oss.OSS;
+
+/**
+ * 阿里云OSS客户端注册表，线程安全。按访问id复用客户端，每个客户端的连接池大小有限，
+ * 临时凭证的客户端在闲置超时后关闭，注册表关闭时关闭全部客户端。
+ * 使用者不应长期持有临时凭证的客户端，而应在每次使用时从注册表中获取
+ *
+ * @author jianglei
+ */
+public class AliyunOssClientRegistry {
+
+    private final String endpoint;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private int maxConnections = 64;
+    private int connectionIdleSeconds = 60;
+    private int idleSeconds = 300;
+    private volatile long lastEvictTime = System.currentTimeMillis();
+    private volatile boolean closed;
+
+    public AliyunOssClientRegistry(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * @param maxConnections 每个客户端的最大连接数，默认为64
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * @param connectionIdleSeconds 客户端连接池中的连接闲置多少秒后关闭，默认为60
+     */
+    public void setConnectionIdleSeconds(int connectionIdleSeconds) {
+        this.connectionIdleSeconds = connectionIdleSeconds;
+    }
+
+    /**
+     * @param idleSeconds 临时凭证的客户端闲置多少秒后关闭，默认为300
+     */
+    public void setIdleSeconds(int idleSeconds) {
+        this.idleSeconds = idleSeconds;
+    }
+
+    /**
+     * 获取指定凭证的客户端，不存在时创建
+     *
+     * @param accessKeyId     访问id
+     * @param accessKeySecret 访问密钥
+     * @param securityToken   临时凭证的安全令牌，为null表示长期凭证，长期凭证的客户端不会因闲置而关闭
+     * @return 客户端
+     */
+    public OSS get(String accessKeyId, String accessKeySecret, String securityToken) {
+        Assert.state(!this.closed, "The registry has been shutdown");
+        long now = System.currentTimeMillis();
+        if (now - this.lastEvictTime > this.idleSeconds * 500L) { // 在闲置时限的一半间隔内至多清理一次
+            this.lastEvictTime = now;
+            evictIdle(now);
+        }
+        Entry entry = this.entries.compute(accessKeyId, (key, existing) -> {
+            // 同一访问id的密钥或令牌变化时，以新凭证重建客户端
+            if (existing != null && existing.matches(accessKeySecret, securityToken)) {
+                existing.lastAccessTime = now; // 在计算中更新，以免与闲置清理冲突
+                return existing;
+            }
+            if (existing != null) {
+                existing.oss.shutdown();
+            }
+            return new Entry(AliyunOssUtil.buildOss(this.endpoint, accessKeyId, accessKeySecret, securityToken,
+                    buildConfiguration()), accessKeySecret, securityToken, now);
+        });
+        return entry.oss;
+    }
+
+    private ClientConfiguration buildConfiguration() {
+        ClientConfiguration config = AliyunOssUtil.buildConfiguration();
+        config.setMaxConnections(this.maxConnections);
+        config.setIdleConnectionTime(this.connectionIdleSeconds * 1000L);
+        return config;
+    }
+
+    private void evictIdle(long now) {
+        long idleMillis = this.idleSeconds * 1000L;
+        this.entries.forEach((accessKeyId, entry) -> {
+            if (entry.securityToken != null) {
+                this.entries.computeIfPresent(accessKeyId, (key, existing) -> {
+                    if (now - existing.lastAccessTime > idleMillis) {
+                        existing.oss.shutdown();
+                        return null;
+                    }
+                    return existing;
+                });
+            }
+        });
+    }
+
+    /**
+     * 移除并关闭指定访问id的客户端，用于临时凭证不再使用时及时释放资源
+     *
+     * @param accessKeyId 访问id
+     */
+    public void remove(String accessKeyId) {
+        Entry entry = this.entries.remove(accessKeyId);
+        if (entry != null) {
+            entry.oss.shutdown();
+        }
+    }
+
+    /**
+     * @return 当前的客户端数量
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * 关闭注册表及其中的全部客户端，关闭后不能再获取客户端
+     */
+    public void shutdown() {
+        this.closed = true;
+        this.entries.keySet().forEach(this::remove);
+    }
+
+    private static class Entry {
+
+        private final OSS oss;
+        private final String accessKeySecret;
+        private final String securityToken;
+        private volatile long lastAccessTime;
+
+        Entry(OSS oss, String accessKeySecret, String securityToken, long lastAccessTime) {
+            this.oss = oss;
+            this.accessKeySecret = accessKeySecret;
+            this.securityToken = securityToken;
+            this.lastAccessTime = lastAccessTime;
+        }
+
+        boolean matches(String accessKeySecret, String securityToken) {
+            return Objects.equals(this.accessKeySecret, accessKeySecret)
+                    && Objects.equals(this.securityToken, securityToken);
+        }
+
+    }
+
+}
@@ -18,14 +18,26 @@ public class AliyunOssUtil {
     private AliyunOssUtil() {
     }
 
+    /**
+     * 构建客户端，使用者负责在不再使用时关闭，需复用的客户端应通过{@link AliyunOssClientRegistry}获取
+     */
     public static OSS buildOss(String endpoint, String accessKeyId, String accessKeySecret,
             String securityToken) {
+        return buildOss(endpoint, accessKeyId, accessKeySecret, securityToken, buildConfiguration());
+    }
+
+    public static OSS buildOss(String endpoint, String accessKeyId, String accessKeySecret,
+            String securityToken, ClientConfiguration config) {
         CredentialsProvider credsProvider = new DefaultCredentialProvider(accessKeyId,
                 accessKeySecret, securityToken);
+        return new OSSClient(endpoint, credsProvider, config);
+    }
+
+    public static ClientConfiguration buildConfiguration() {
         ClientConfiguration config = new ClientConfiguration();
         config.setRequestTimeoutEnabled(true);
         config.setRequestTimeout(10 * 1000); // 10秒超时
-        return new OSSClient(endpoint, credsProvider, config);
+        return config;
     }
 
     public static OSS buildOss(String endpoint, String accessKeyId, String accessKeySecret) {
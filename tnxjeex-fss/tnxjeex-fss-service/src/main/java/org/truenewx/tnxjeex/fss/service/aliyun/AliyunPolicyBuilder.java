@@ -1,9 +1,6 @@
 package org.truenewx.tnxjeex.fss.service.aliyun;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 
 import org.truenewx.tnxjee.core.Strings;
 import org.truenewx.tnxjee.core.util.EncryptUtil;
@@ -36,17 +33,25 @@ public class AliyunPolicyBuilder {
         return buildDocument(path, READ_OBJECT_ACTION_NAMES);
     }
 
+    public String buildReadDocument(Collection<String> paths) {
+        return buildDocument(paths, READ_OBJECT_ACTION_NAMES);
+    }
+
     public String buildWriteDocument(String bucket, String path) {
         return buildDocument(path, WRITE_OBJECT_ACTION_NAMES);
     }
 
     public String buildDocument(String path, String[] actionNames) {
-        Map<String, Object> policy = buildPolicyMap(path, actionNames);
+        return buildDocument(Collections.singletonList(path), actionNames);
+    }
+
+    public String buildDocument(Collection<String> paths, String[] actionNames) {
+        Map<String, Object> policy = buildPolicyMap(paths, actionNames);
         String document = JsonUtil.toJson(policy);
         return document;
     }
 
-    private Map<String, Object> buildPolicyMap(String path, String[] actionNames) {
+    private Map<String, Object> buildPolicyMap(Collection<String> paths, String[] actionNames) {
         Map<String, Object> policy = new HashMap<>();
         policy.put("Version", "1");
 
@@ -64,7 +69,9 @@ public class AliyunPolicyBuilder {
 
         List<String> resources = new ArrayList<>();
         statement.put("Resource", resources);
-        resources.add(buildResource(path));
+        for (String path : paths) {
+            resources.add(buildResource(path));
+        }
 
         statement.put("Effect", "Allow");
 
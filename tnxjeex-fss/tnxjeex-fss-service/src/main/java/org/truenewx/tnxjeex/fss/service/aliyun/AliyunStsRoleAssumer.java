@@ -26,6 +26,10 @@ public class AliyunStsRoleAssumer {
         this.roleArn = "acs:ram::" + account.getAccountId() + ":role/" + roleName.toLowerCase();
     }
 
+    public long getDurationSeconds() {
+        return this.durationSeconds;
+    }
+
     public void setDurationSeconds(long durationSeconds) {
         this.durationSeconds = durationSeconds;
     }
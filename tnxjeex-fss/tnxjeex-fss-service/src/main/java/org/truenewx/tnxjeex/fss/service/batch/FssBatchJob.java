@@ -0,0 +1,136 @@
+package org.truenewx.tnxjeex.fss.service.batch;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文件存储批量作业，可在执行过程中查询进度和吞吐量
+ *
+ * @author jianglei
+ */
+public class FssBatchJob {
+
+    private final String name;
+    private final long startTime = System.currentTimeMillis();
+    private volatile long endTime;
+    private volatile long total = -1;
+    private final AtomicLong listed = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong affected = new AtomicLong();
+    private final CompletableFuture<FssBatchJob> future = new CompletableFuture<>();
+
+    FssBatchJob(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * @return 结束时间毫秒数，未结束时为0
+     */
+    public long getEndTime() {
+        return this.endTime;
+    }
+
+    /**
+     * @return 文件总数，尚未列出全部文件时为-1
+     */
+    public long getTotal() {
+        return this.total;
+    }
+
+    /**
+     * @return 已列出的文件数
+     */
+    public long getListed() {
+        return this.listed.get();
+    }
+
+    /**
+     * @return 已处理的文件数，包括处理失败的
+     */
+    public long getProcessed() {
+        return this.processed.get();
+    }
+
+    public long getFailed() {
+        return this.failed.get();
+    }
+
+    /**
+     * @return 实际被删除、复制或移动的文件数
+     */
+    public long getAffected() {
+        return this.affected.get();
+    }
+
+    /**
+     * @return 进度，取值范围为0~1，尚未列出全部文件时按已列出的文件数估算
+     */
+    public double getProgress() {
+        long total = this.total < 0 ? this.listed.get() : this.total;
+        return total == 0 ? (isDone() ? 1 : 0) : (double) this.processed.get() / total;
+    }
+
+    /**
+     * @return 每秒处理的文件数
+     */
+    public double getThroughput() {
+        long endTime = this.endTime > 0 ? this.endTime : System.currentTimeMillis();
+        long millis = Math.max(endTime - this.startTime, 1);
+        return this.processed.get() * 1000d / millis;
+    }
+
+    public boolean isDone() {
+        return this.future.isDone();
+    }
+
+    /**
+     * @return 作业结束时完成的异步结果，可用于等待作业结束
+     */
+    public CompletableFuture<FssBatchJob> getFuture() {
+        return this.future;
+    }
+
+    void onListed() {
+        this.listed.incrementAndGet();
+    }
+
+    void onListCompleted() {
+        this.total = this.listed.get();
+    }
+
+    void onProcessed(long count, boolean succeeded) {
+        this.processed.addAndGet(count);
+        if (!succeeded) {
+            this.failed.addAndGet(count);
+        }
+    }
+
+    void onAffected(long count) {
+        this.affected.addAndGet(count);
+    }
+
+    void complete(Throwable e) {
+        this.endTime = System.currentTimeMillis();
+        if (e == null) {
+            this.future.complete(this);
+        } else {
+            this.future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.name + ": " + getProcessed() + "/" + (this.total < 0 ? "?" : this.total) + ", failed "
+                + getFailed() + ", affected " + getAffected() + ", " + String.format("%.1f", getThroughput()) + "/s";
+    }
+
+}
@@ -0,0 +1,203 @@
+package org.truenewx.tnxjeex.fss.service.batch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import org.springframework.util.Assert;
+import org.truenewx.tnxjee.core.util.LogUtil;
+import org.truenewx.tnxjee.core.util.NetUtil;
+import org.truenewx.tnxjeex.fss.service.FssAccessor;
+
+/**
+ * 文件存储批量作业执行器，用于保留期清理、租户迁移等批量删除、复制和移动文件的场景。
+ * 文件按批次处理，多个批次并发执行，列出文件与处理文件同时进行
+ *
+ * @author jianglei
+ */
+public class FssBatchJobRunner {
+
+    private Executor executor;
+    private int batchSize = 1000;
+    private int parallelism = 4;
+
+    /**
+     * @param executor 执行作业的线程池，其可用线程数应大于并发批次数
+     */
+    public FssBatchJobRunner(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param batchSize 每批次处理的文件数
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param parallelism 并发处理的批次数
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 删除指定前缀下的所有文件
+     *
+     * @param accessor 访问器
+     * @param prefix   存储路径前缀
+     * @return 作业
+     */
+    public FssBatchJob delete(FssAccessor accessor, String prefix) {
+        assertListSupported(accessor);
+        assertDeleteSupported(accessor);
+        return run("delete " + prefix, consumer -> accessor.list(prefix, consumer), paths -> {
+            accessor.delete(paths);
+            return paths.size();
+        });
+    }
+
+    /**
+     * 删除指定的文件
+     *
+     * @param accessor 访问器
+     * @param paths    存储路径集
+     * @return 作业
+     */
+    public FssBatchJob delete(FssAccessor accessor, Collection<String> paths) {
+        assertDeleteSupported(accessor);
+        return run("delete " + paths.size() + " files", consumer -> paths.forEach(consumer), batch -> {
+            accessor.delete(batch);
+            return batch.size();
+        });
+    }
+
+    /**
+     * 复制指定前缀下的所有文件到目标前缀下，文件的相对路径保持不变
+     *
+     * @param accessor     访问器
+     * @param sourcePrefix 源存储路径前缀
+     * @param targetPrefix 目标存储路径前缀
+     * @return 作业
+     */
+    public FssBatchJob copy(FssAccessor accessor, String sourcePrefix, String targetPrefix) {
+        assertListSupported(accessor);
+        // 列出的存储路径均为标准化的路径，前缀也需标准化后才能正确截取相对路径
+        String standardSourcePrefix = NetUtil.standardizeUrl(sourcePrefix);
+        String standardTargetPrefix = NetUtil.standardizeUrl(targetPrefix);
+        return run("copy " + standardSourcePrefix + " to " + standardTargetPrefix,
+                consumer -> accessor.list(standardSourcePrefix, consumer), paths -> {
+                    int count = 0;
+                    for (String path : paths) {
+                        String targetPath = standardTargetPrefix + path.substring(standardSourcePrefix.length());
+                        if (accessor.copy(path, targetPath)) {
+                            count++;
+                        }
+                    }
+                    return count;
+                });
+    }
+
+    /**
+     * 移动指定前缀下的所有文件到目标前缀下，文件的相对路径保持不变
+     *
+     * @param accessor     访问器
+     * @param sourcePrefix 源存储路径前缀
+     * @param targetPrefix 目标存储路径前缀
+     * @return 作业
+     */
+    public FssBatchJob move(FssAccessor accessor, String sourcePrefix, String targetPrefix) {
+        assertListSupported(accessor);
+        String standardSourcePrefix = NetUtil.standardizeUrl(sourcePrefix);
+        String standardTargetPrefix = NetUtil.standardizeUrl(targetPrefix);
+        return run("move " + standardSourcePrefix + " to " + standardTargetPrefix,
+                consumer -> accessor.list(standardSourcePrefix, consumer), paths -> {
+                    int count = 0;
+                    for (String path : paths) {
+                        String targetPath = standardTargetPrefix + path.substring(standardSourcePrefix.length());
+                        if (accessor.move(path, targetPath)) {
+                            count++;
+                        }
+                    }
+                    return count;
+                });
+    }
+
+    private void assertListSupported(FssAccessor accessor) {
+        Assert.isTrue(accessor.isListSupported(), "The accessor does not support listing files");
+    }
+
+    private void assertDeleteSupported(FssAccessor accessor) {
+        Assert.isTrue(accessor.isDeleteSupported(), "The accessor does not support deleting files");
+    }
+
+    private FssBatchJob run(String name, Lister lister, BatchProcessor processor) {
+        FssBatchJob job = new FssBatchJob(name);
+        CompletableFuture.runAsync(() -> {
+            // 限定同时处理中的批次数，同时也限制了列出文件的速度，避免积压过多文件路径
+            Semaphore permits = new Semaphore(this.parallelism);
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            List<String> batch = new ArrayList<>();
+            try {
+                lister.list(path -> {
+                    job.onListed();
+                    batch.add(path);
+                    if (batch.size() >= this.batchSize) {
+                        futures.add(submit(job, new ArrayList<>(batch), processor, permits));
+                        batch.clear();
+                    }
+                });
+                if (batch.size() > 0) {
+                    futures.add(submit(job, batch, processor, permits));
+                }
+                job.onListCompleted();
+                CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+                job.complete(null);
+            } catch (Throwable e) {
+                LogUtil.error(getClass(), e);
+                job.complete(e);
+            }
+        }, this.executor);
+        return job;
+    }
+
+    private CompletableFuture<Void> submit(FssBatchJob job, List<String> paths, BatchProcessor processor,
+            Semaphore permits) {
+        permits.acquireUninterruptibly();
+        return CompletableFuture.runAsync(() -> {
+            try {
+                job.onAffected(processor.process(paths));
+                job.onProcessed(paths.size(), true);
+            } catch (Exception e) { // 单个批次失败不影响其它批次
+                LogUtil.error(getClass(), e);
+                job.onProcessed(paths.size(), false);
+            } finally {
+                permits.release();
+            }
+        }, this.executor);
+    }
+
+    @FunctionalInterface
+    private interface Lister {
+
+        void list(Consumer<String> consumer) throws IOException;
+
+    }
+
+    @FunctionalInterface
+    private interface BatchProcessor {
+
+        /**
+         * @return 实际受影响的文件数
+         */
+        int process(List<String> paths) throws IOException;
+
+    }
+
+}
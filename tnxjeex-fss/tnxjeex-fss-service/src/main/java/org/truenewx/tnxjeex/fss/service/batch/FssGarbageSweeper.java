@@ -0,0 +1,265 @@
+package org.truenewx.tnxjeex.fss.service.batch;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Collectors;
+
+import org.apache.commons.io.FilenameUtils;
+import org.springframework.context.ApplicationContext;
+import org.springframework.util.Assert;
+import org.truenewx.tnxjee.core.Strings;
+import org.truenewx.tnxjee.core.beans.ContextInitializedBean;
+import org.truenewx.tnxjee.core.util.LogUtil;
+import org.truenewx.tnxjee.core.util.NetUtil;
+import org.truenewx.tnxjeex.fss.service.FssAccessStrategy;
+import org.truenewx.tnxjeex.fss.service.FssAccessor;
+import org.truenewx.tnxjeex.fss.service.FssImageTransformer;
+import org.truenewx.tnxjeex.fss.service.FssReferenceChecker;
+import org.truenewx.tnxjeex.fss.service.model.FssProvider;
+import org.truenewx.tnxjeex.fss.service.model.FssStoragePath;
+
+/**
+ * 文件存储垃圾回收器，删除不再被业务数据引用的文件，并清除写入中断遗留的临时数据。
+ * 按批次边列出边回收，并限定删除速率，以免长时间占用存储的I/O。通常由应用定时调用{@link #sweep()}
+ *
+ * @author jianglei
+ */
+public class FssGarbageSweeper implements ContextInitializedBean {
+
+    private FssReferenceChecker referenceChecker;
+    private Executor executor;
+    private int batchSize = 500;
+    private int maxDeletesPerSecond = 100;
+    private long batchIntervalMillis = 100;
+    private long graceMillis = 24 * 60 * 60 * 1000; // 默认只回收24小时之前的文件，以免删除刚上传尚未被引用的文件
+    // 访问器-上下文路径-业务类型集的映射集，多个业务类型可能共用相同的上下文路径
+    private final Map<FssAccessor, Map<String, List<String>>> contextTypes = new LinkedHashMap<>();
+    // 业务类型-上传图片转换器的映射集，用于判定保留的原图是否被引用
+    private final Map<String, FssImageTransformer> imageTransformers = new HashMap<>();
+
+    /**
+     * @param referenceChecker 引用检查器，未设置时从容器中获取唯一的引用检查器，均没有时只清除临时数据
+     */
+    public void setReferenceChecker(FssReferenceChecker referenceChecker) {
+        this.referenceChecker = referenceChecker;
+    }
+
+    /**
+     * @param executor 执行回收的线程池，未设置时从容器中获取唯一的线程池，均没有时在调用线程中执行
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * @param batchSize 每批次检查引用的文件数
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param maxDeletesPerSecond 每秒最多删除的文件数
+     */
+    public void setMaxDeletesPerSecond(int maxDeletesPerSecond) {
+        this.maxDeletesPerSecond = maxDeletesPerSecond;
+    }
+
+    /**
+     * @param batchIntervalMillis 批次之间的间隔毫秒数，以让出存储的I/O
+     */
+    public void setBatchIntervalMillis(long batchIntervalMillis) {
+        this.batchIntervalMillis = batchIntervalMillis;
+    }
+
+    /**
+     * @param graceSeconds 宽限秒数，最后修改时间在此之内的文件和临时数据不回收
+     */
+    public void setGraceSeconds(int graceSeconds) {
+        this.graceMillis = graceSeconds * 1000L;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    @Override
+    public void afterInitialized(ApplicationContext context) throws Exception {
+        Map<FssProvider, FssAccessor> accessors = new HashMap<>();
+        for (FssAccessor accessor : context.getBeansOfType(FssAccessor.class).values()) {
+            accessors.put(accessor.getProvider(), accessor);
+        }
+        Map<String, FssAccessStrategy> strategies = context.getBeansOfType(FssAccessStrategy.class);
+        for (FssAccessStrategy<?> strategy : strategies.values()) {
+            FssAccessor accessor = accessors.get(strategy.getProvider());
+            if (accessor != null) {
+                String contextPath = NetUtil.standardizeUrl(strategy.getContextPath());
+                this.contextTypes.computeIfAbsent(accessor, key -> new LinkedHashMap<>())
+                        .computeIfAbsent(contextPath, key -> new ArrayList<>()).add(strategy.getType());
+            }
+            FssImageTransformer imageTransformer = strategy.getImageTransformer();
+            if (imageTransformer != null && imageTransformer.isOriginalPreserved()) {
+                this.imageTransformers.put(strategy.getType(), imageTransformer);
+            }
+        }
+        // 同一访问器下的上下文路径不能嵌套，否则内层上下文路径下的文件会被按外层的业务类型判定引用而误删
+        for (Map<String, List<String>> contextPathTypes : this.contextTypes.values()) {
+            for (String contextPath : contextPathTypes.keySet()) {
+                String otherContextPath = getOtherContextPath(contextPathTypes, contextPath, contextPath);
+                Assert.state(otherContextPath == null,
+                        "Nested context paths: " + contextPath + " and " + otherContextPath);
+            }
+        }
+        if (this.referenceChecker == null) {
+            this.referenceChecker = context.getBeanProvider(FssReferenceChecker.class).getIfUnique();
+        }
+        if (this.executor == null) {
+            this.executor = context.getBeanProvider(Executor.class).getIfUnique();
+        }
+    }
+
+    /**
+     * 执行一次回收
+     *
+     * @return 回收作业，已处理数为已检查的文件数，受影响数为删除的文件数与清除的临时数据数之和
+     */
+    public FssBatchJob sweep() {
+        FssBatchJob job = new FssBatchJob("sweep");
+        if (this.executor == null) {
+            sweep(job);
+        } else {
+            CompletableFuture.runAsync(() -> sweep(job), this.executor);
+        }
+        return job;
+    }
+
+    private void sweep(FssBatchJob job) {
+        try {
+            long expiredTime = System.currentTimeMillis() - this.graceMillis;
+            for (Map.Entry<FssAccessor, Map<String, List<String>>> entry : this.contextTypes.entrySet()) {
+                FssAccessor accessor = entry.getKey();
+                job.onAffected(accessor.purgeTemp(expiredTime));
+                // 不支持列出或删除文件的访问器，只能清除临时数据
+                if (this.referenceChecker != null && accessor.isListSupported() && accessor.isDeleteSupported()) {
+                    Map<String, List<String>> contextPathTypes = entry.getValue();
+                    for (Map.Entry<String, List<String>> contextEntry : contextPathTypes.entrySet()) {
+                        sweep(job, accessor, contextPathTypes, contextEntry.getKey(), contextEntry.getValue(),
+                                expiredTime);
+                    }
+                }
+            }
+            job.onListCompleted();
+            job.complete(null);
+        } catch (Throwable e) {
+            LogUtil.error(getClass(), e);
+            job.complete(e);
+        }
+    }
+
+    /**
+     * 获取指定路径所属的其它上下文路径
+     *
+     * @return 指定路径所属的除指定上下文路径以外的上下文路径，没有时返回null
+     */
+    private String getOtherContextPath(Map<String, List<String>> contextPathTypes, String contextPath,
+            String path) {
+        for (String otherContextPath : contextPathTypes.keySet()) {
+            if (!otherContextPath.equals(contextPath) && path.startsWith(otherContextPath + Strings.SLASH)) {
+                return otherContextPath;
+            }
+        }
+        return null;
+    }
+
+    private void sweep(FssBatchJob job, FssAccessor accessor, Map<String, List<String>> contextPathTypes,
+            String contextPath, List<String> types, long expiredTime) throws IOException {
+        List<String> batch = new ArrayList<>();
+        accessor.list(contextPath + Strings.SLASH, path -> {
+            job.onListed();
+            // 属于其它上下文路径的文件由其所属上下文路径的业务类型判定引用
+            if (getOtherContextPath(contextPathTypes, contextPath, path) != null) {
+                return;
+            }
+            batch.add(path);
+            if (batch.size() >= this.batchSize) {
+                sweep(job, accessor, contextPath, types, batch, expiredTime);
+                batch.clear();
+            }
+        });
+        if (batch.size() > 0) {
+            sweep(job, accessor, contextPath, types, batch, expiredTime);
+        }
+    }
+
+    private void sweep(FssBatchJob job, FssAccessor accessor, String contextPath, List<String> types,
+            List<String> paths, long expiredTime) {
+        long startTime = System.currentTimeMillis();
+        int deleted = 0;
+        try {
+            // 存储路径在任一业务类型下被引用，均不能回收
+            Map<String, List<String>> pathStorageUrls = new HashMap<>();
+            for (String path : paths) {
+                List<String> storageUrls = new ArrayList<>();
+                String relativePath = path.substring(contextPath.length());
+                for (String type : types) {
+                    addStorageUrl(storageUrls, type, relativePath);
+                    // 保留的原图在其转换后的文件被引用时视为被引用
+                    FssImageTransformer imageTransformer = this.imageTransformers.get(type);
+                    if (imageTransformer != null) {
+                        String transformedFilename = imageTransformer
+                                .getTransformedStorageFilename(FilenameUtils.getName(relativePath));
+                        if (transformedFilename != null) {
+                            addStorageUrl(storageUrls, type,
+                                    FilenameUtils.getFullPath(relativePath) + transformedFilename);
+                        }
+                    }
+                }
+                pathStorageUrls.put(path, storageUrls);
+            }
+            Set<String> referenced = this.referenceChecker.getReferenced(
+                    pathStorageUrls.values().stream().flatMap(List::stream).collect(Collectors.toList()));
+            List<String> garbagePaths = new ArrayList<>();
+            for (String path : paths) {
+                List<String> storageUrls = pathStorageUrls.get(path);
+                if (!storageUrls.isEmpty() && Collections.disjoint(storageUrls, referenced)) {
+                    Long lastModifiedTime = accessor.getLastModifiedTime(path);
+                    if (lastModifiedTime != null && lastModifiedTime < expiredTime) {
+                        garbagePaths.add(path);
+                    }
+                }
+            }
+            if (garbagePaths.size() > 0) {
+                accessor.delete(garbagePaths);
+                deleted = garbagePaths.size();
+            }
+            job.onAffected(deleted);
+            job.onProcessed(paths.size(), true);
+        } catch (Exception e) { // 单个批次失败不影响其它批次
+            LogUtil.error(getClass(), e);
+            job.onProcessed(paths.size(), false);
+        }
+        pause(startTime, deleted);
+    }
+
+    private void addStorageUrl(List<String> storageUrls, String type, String relativePath) {
+        FssStoragePath fsp = FssStoragePath.of(Strings.SLASH + type + relativePath);
+        if (fsp != null) {
+            storageUrls.add(fsp.getUrl());
+        }
+    }
+
+    /**
+     * 按删除速率和批次间隔暂停，以让出存储的I/O
+     */
+    private void pause(long startTime, int deleted) {
+        long minMillis = this.maxDeletesPerSecond > 0 ? deleted * 1000L / this.maxDeletesPerSecond : 0;
+        long millis = Math.max(minMillis - (System.currentTimeMillis() - startTime), this.batchIntervalMillis);
+        if (millis > 0) {
+            try {
+                Thread.sleep(millis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -2,6 +2,7 @@ package org.truenewx.tnxjeex.fss.service.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.truenewx.tnxjeex.fss.service.util.FssImageUtil;
 
 /**
  * 文件存储访问器配置属性集
@@ -14,6 +15,26 @@ public class FssLocalAccessorProperties {
      * 本地访问器根目录
      */
     private String root;
+    /**
+     * 分片目录层级数，默认为0即不分片
+     */
+    private int shardLevels;
+    /**
+     * 写文件时是否同步到磁盘
+     */
+    private boolean fsync;
+    /**
+     * 打包存储的文件大小阈值，默认为0即不打包存储
+     */
+    private int packThreshold;
+    /**
+     * 压缩存储的文件扩展名集，如：csv,json,txt,log，默认为空即不压缩存储
+     */
+    private String[] compressedExtensions;
+    /**
+     * 可生成缩略图的原图最大像素数，默认为4000万，小于等于0时不限定
+     */
+    private long thumbnailMaxPixels = FssImageUtil.DEFAULT_MAX_PIXELS;
 
     public String getRoot() {
         return this.root;
@@ -23,4 +44,44 @@ public class FssLocalAccessorProperties {
         this.root = root;
     }
 
+    public int getShardLevels() {
+        return this.shardLevels;
+    }
+
+    public void setShardLevels(int shardLevels) {
+        this.shardLevels = shardLevels;
+    }
+
+    public boolean isFsync() {
+        return this.fsync;
+    }
+
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    public int getPackThreshold() {
+        return this.packThreshold;
+    }
+
+    public void setPackThreshold(int packThreshold) {
+        this.packThreshold = packThreshold;
+    }
+
+    public String[] getCompressedExtensions() {
+        return this.compressedExtensions;
+    }
+
+    public void setCompressedExtensions(String[] compressedExtensions) {
+        this.compressedExtensions = compressedExtensions;
+    }
+
+    public long getThumbnailMaxPixels() {
+        return this.thumbnailMaxPixels;
+    }
+
+    public void setThumbnailMaxPixels(long thumbnailMaxPixels) {
+        this.thumbnailMaxPixels = thumbnailMaxPixels;
+    }
+
 }
@@ -14,7 +14,15 @@ public class OwnFssServiceConfig {
     @Bean
     @ConditionalOnProperty("tnxjeex.fss.accessor.local.root")
     public OwnFssAccessor ownFssAccessor(FssLocalAccessorProperties properties) {
-        return new OwnFssAccessor(properties.getRoot(), getOwnAccessorSalt());
+        OwnFssAccessor accessor = new OwnFssAccessor(properties.getRoot(), getOwnAccessorSalt());
+        accessor.setShardLevels(properties.getShardLevels());
+        accessor.setFsync(properties.isFsync());
+        accessor.setPackThreshold(properties.getPackThreshold());
+        accessor.setThumbnailMaxPixels(properties.getThumbnailMaxPixels());
+        if (properties.getCompressedExtensions() != null) {
+            accessor.setCompressedExtensions(properties.getCompressedExtensions());
+        }
+        return accessor;
     }
 
     protected Byte getOwnAccessorSalt() {
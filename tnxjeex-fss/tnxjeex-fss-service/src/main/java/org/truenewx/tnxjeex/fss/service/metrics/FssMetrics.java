@@ -0,0 +1,174 @@
+package org.truenewx.tnxjeex.fss.service.metrics;
+
+import java.util.function.Supplier;
+
+import org.truenewx.tnxjeex.fss.service.model.FssProvider;
+
+/**
+ * 文件存储服务的度量指标记录器，由应用按所用的监控系统实现。
+ * 未提供时使用{@link #NONE}，此时埋点处不计时，不产生额外开销
+ *
+ * @author jianglei
+ */
+public interface FssMetrics {
+
+    /**
+     * 写文件
+     */
+    String WRITE = "write";
+    /**
+     * 读文件
+     */
+    String READ = "read";
+    /**
+     * 获取文件元信息
+     */
+    String META = "meta";
+    /**
+     * 获取读取URL，包括签名
+     */
+    String READ_URL = "readUrl";
+    /**
+     * STS角色扮演调用
+     */
+    String STS_CALL = "stsCall";
+    /**
+     * 远程获取对象访问权限
+     */
+    String ACL_LOOKUP = "aclLookup";
+    /**
+     * 上传图片转换，记录的字节数为转换节省的字节数
+     */
+    String IMAGE_TRANSFORM = "imageTransform";
+    /**
+     * 分片上传的分片重试
+     */
+    String PART_RETRY = "partRetry";
+    /**
+     * 生成缩略图
+     */
+    String THUMBNAIL_GENERATE = "thumbnailGenerate";
+    /**
+     * 读权限判定缓存的命中数
+     */
+    String READ_DECISION_CACHE_HITS = "readDecisionCache.hits";
+    /**
+     * 读权限判定缓存的未命中数
+     */
+    String READ_DECISION_CACHE_MISSES = "readDecisionCache.misses";
+    /**
+     * 读取签名器缓存的命中数
+     */
+    String READ_SIGNER_CACHE_HITS = "readSignerCache.hits";
+    /**
+     * 读取签名器缓存的未命中数
+     */
+    String READ_SIGNER_CACHE_MISSES = "readSignerCache.misses";
+    /**
+     * 对象访问权限缓存的命中数
+     */
+    String ACL_CACHE_HITS = "aclCache.hits";
+    /**
+     * 对象访问权限缓存的未命中数
+     */
+    String ACL_CACHE_MISSES = "aclCache.misses";
+    /**
+     * 当前的OSS客户端数
+     */
+    String OSS_CLIENTS = "ossClients";
+    /**
+     * 本地缓存的命中数
+     */
+    String LOCAL_CACHE_HITS = "localCache.hits";
+    /**
+     * 本地缓存的未命中数
+     */
+    String LOCAL_CACHE_MISSES = "localCache.misses";
+    /**
+     * 本地缓存命中的字节数
+     */
+    String LOCAL_CACHE_HIT_BYTES = "localCache.hitBytes";
+    /**
+     * 本地缓存未命中的字节数
+     */
+    String LOCAL_CACHE_MISS_BYTES = "localCache.missBytes";
+    /**
+     * 本地缓存当前占用的字节数
+     */
+    String LOCAL_CACHE_CACHED_BYTES = "localCache.cachedBytes";
+    /**
+     * 尚未完成的复制任务数
+     */
+    String REPLICATION_PENDING = "replication.pending";
+    /**
+     * 复制任务的重试
+     */
+    String REPLICATION_RETRY = "replication.retry";
+    /**
+     * 达到最大尝试次数而放弃的复制任务
+     */
+    String REPLICATION_FAILED = "replication.failed";
+    /**
+     * 副本读取失败，为格式化模版，参数为副本序号，主副本的序号为0
+     */
+    String REPLICA_READ_FAILURE = "replica%d.readFailure";
+
+    /**
+     * 不记录任何指标的记录器
+     */
+    FssMetrics NONE = new FssMetrics() {
+        @Override
+        public boolean isEnabled() {
+            return false;
+        }
+    };
+
+    /**
+     * @return 是否启用，未启用时埋点处无需计时
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    /**
+     * 记录一次操作的耗时
+     *
+     * @param operation 操作名称
+     * @param type      业务类型，访问器和授权器中记录时为null
+     * @param provider  服务提供商
+     * @param nanos     耗时纳秒数
+     */
+    default void recordTime(String operation, String type, FssProvider provider, long nanos) {
+    }
+
+    /**
+     * 记录一次操作传输的字节数
+     *
+     * @param operation 操作名称
+     * @param type      业务类型，访问器和授权器中记录时为null
+     * @param provider  服务提供商
+     * @param bytes     字节数
+     */
+    default void recordBytes(String operation, String type, FssProvider provider, long bytes) {
+    }
+
+    /**
+     * 事件计数加一
+     *
+     * @param event    事件名称
+     * @param provider 服务提供商
+     */
+    default void increment(String event, FssProvider provider) {
+    }
+
+    /**
+     * 注册一个由记录器按需读取的指标，如缓存的命中数
+     *
+     * @param name     指标名称
+     * @param provider 服务提供商
+     * @param supplier 指标值提供者
+     */
+    default void registerGauge(String name, FssProvider provider, Supplier<Number> supplier) {
+    }
+
+}
@@ -0,0 +1,12 @@
+package org.truenewx.tnxjeex.fss.service.metrics;
+
+/**
+ * 可感知度量指标记录器的，访问器和授权器实现后，由文件存储服务在初始化时注入记录器
+ *
+ * @author jianglei
+ */
+public interface FssMetricsAware {
+
+    void setMetrics(FssMetrics metrics);
+
+}
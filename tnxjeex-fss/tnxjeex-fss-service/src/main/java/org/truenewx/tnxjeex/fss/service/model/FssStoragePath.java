@@ -24,21 +24,22 @@ public class FssStoragePath {
     }
 
     public static FssStoragePath of(String s) {
+        // 只记录各部分的位置，最后一次性截取，以减少中间字符串的创建
+        int start = 0;
         if (s.startsWith(PROTOCOL)) {
-            s = s.substring(PROTOCOL.length() - 1);
+            start = PROTOCOL.length() - 1;
         } else if (s.startsWith("//")) {
-            s = s.substring(1);
+            start = 1;
         }
         // 预处理后不以/开头的地址不支持，典型的如：http://
-        if (s.startsWith(Strings.SLASH)) {
-            int index = s.indexOf(Strings.SLASH, 1); // 第二个斜杠的位置
-            if (index > 0) {
-                String type = s.substring(1, index); // 去掉第一级的存储类型
-                String path = s.substring(index);
-                index = path.lastIndexOf(Strings.SLASH); // 最后一个斜杠的位置
-                if (index >= 0) {
-                    String filename = path.substring(index + 1); // 拆分出最后一级的文件名
-                    String relativeDir = path.substring(0, index); // 去掉文件名后剩余的为相对目录
+        if (s.startsWith(Strings.SLASH, start)) {
+            int typeEnd = s.indexOf(Strings.SLASH, start + 1); // 第二个斜杠的位置
+            if (typeEnd > start + 1) {
+                int filenameStart = s.lastIndexOf(Strings.SLASH) + 1; // 最后一个斜杠之后为文件名
+                if (filenameStart < s.length()) {
+                    String type = s.substring(start + 1, typeEnd); // 去掉第一级的存储类型
+                    String relativeDir = s.substring(typeEnd, filenameStart - 1); // 去掉文件名后剩余的为相对目录
+                    String filename = s.substring(filenameStart);
                     FssStoragePath instance = new FssStoragePath(type, relativeDir, filename);
                     if (instance.isValid()) {
                         return instance;
@@ -1,7 +1,18 @@
 package org.truenewx.tnxjeex.fss.service.own;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.io.IOUtils;
 import org.springframework.util.Assert;
 import org.truenewx.tnxjee.core.Strings;
@@ -11,17 +22,37 @@ import org.truenewx.tnxjee.core.util.LogUtil;
 import org.truenewx.tnxjee.core.util.NetUtil;
 import org.truenewx.tnxjee.core.util.StringUtil;
 import org.truenewx.tnxjeex.fss.service.FssAccessor;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetrics;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetricsAware;
 import org.truenewx.tnxjeex.fss.service.model.FssProvider;
+import org.truenewx.tnxjeex.fss.service.util.FssImageUtil;
 
 /**
  * 自有文件存储服务访问器
  *
  * @author jianglei
  */
-public class OwnFssAccessor implements FssAccessor {
+public class OwnFssAccessor implements FssAccessor, FssMetricsAware {
+
+    private static final long PACK_SEGMENT_MAX_SIZE = 256 * 1024 * 1024;
+    // 写入时创建的临时文件名，形如：${正式文件名}_${32位UUID}.temp
+    private static final Pattern TEMP_FILENAME_PATTERN = Pattern.compile(".+_[0-9a-fA-F]{32}\\.temp");
+    private static final String GZIP_ENCODING = "gzip";
+    private static final int MAX_KNOWN_DIRS = 100000;
 
     private File root;
     private Byte salt;
+    private int shardLevels;
+    private boolean fsync;
+    private FssMetrics metrics = FssMetrics.NONE;
+    private int packThreshold;
+    private volatile OwnFssPackStore packStore;
+    private Set<String> compressedExtensions = Collections.emptySet();
+    private long thumbnailMaxPixels = FssImageUtil.DEFAULT_MAX_PIXELS;
+    // 已确认存在的目录路径集，避免每次写入都访问文件系统，超过最大数量时清空重新记录
+    private final Set<String> knownDirs = ConcurrentHashMap.newKeySet();
+    // 生成中的缩略图，以合并对同一缩略图的并发生成
+    private final Map<String, CompletableFuture<Boolean>> generatingThumbnails = new ConcurrentHashMap<>();
 
     public OwnFssAccessor(String root, Byte salt) {
         File file = new File(root);
@@ -36,46 +67,241 @@ public class OwnFssAccessor implements FssAccessor {
         this.salt = salt;
     }
 
+    @Override
+    public void setMetrics(FssMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     @Override
     public FssProvider getProvider() {
         return FssProvider.OWN;
     }
 
+    /**
+     * 设置分片目录层级数。文件按文件名的前若干个字符分散存放到多级子目录中，每级取两个字符，
+     * 以免单个目录下文件过多导致文件系统查找和备份变慢。修改已有存储的层级数后，需调用{@link #migrateShards(int)}迁移已有文件
+     *
+     * @param shardLevels 分片目录层级数，默认为0即不分片
+     */
+    public void setShardLevels(int shardLevels) {
+        this.shardLevels = shardLevels;
+    }
+
+    /**
+     * @param fsync 写文件时是否在改名为正式文件前将内容同步到磁盘，开启后可避免断电导致的文件内容丢失，但会降低写性能
+     */
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    /**
+     * 设置打包存储的文件大小阈值，不超过该大小的文件打包存储到段文件中，以减少小文件数量过多带来的文件系统开销。
+     * 打包存储的文件不生成缩略图，读取缩略图时读取原文件；需在{@link #setFsync(boolean)}之后设置
+     *
+     * @param packThreshold 打包存储的文件大小阈值，默认为0即不打包存储
+     */
+    public void setPackThreshold(int packThreshold) {
+        this.packThreshold = packThreshold;
+    }
+
+    /**
+     * 设置压缩存储的文件扩展名集。此类文件写入时以gzip压缩存储，读取时解压，或以压缩内容直接输出给支持gzip的客户端，
+     * 适用于CSV、JSON、日志等文本类文件。打包存储的小文件不压缩。从中移除扩展名后，已压缩存储的该类文件将无法正确读取
+     *
+     * @param extensions 不含.的扩展名集，如：csv、json、txt、log
+     */
+    public void setCompressedExtensions(String... extensions) {
+        Set<String> compressedExtensions = new HashSet<>();
+        for (String extension : extensions) {
+            compressedExtensions.add(extension.toLowerCase());
+        }
+        this.compressedExtensions = compressedExtensions;
+    }
+
+    /**
+     * @param thumbnailMaxPixels 可生成缩略图的原图最大像素数，超过时读取原文件，小于等于0时不限定，默认为4000万
+     */
+    public void setThumbnailMaxPixels(long thumbnailMaxPixels) {
+        this.thumbnailMaxPixels = thumbnailMaxPixels;
+    }
+
+    private boolean isCompressible(String path) {
+        return !this.compressedExtensions.isEmpty()
+                && this.compressedExtensions.contains(FilenameUtils.getExtension(path).toLowerCase());
+    }
+
+    private OwnFssPackStore getPackStore() throws IOException {
+        if (this.packThreshold > 0 && this.packStore == null) {
+            synchronized (this) {
+                if (this.packStore == null) {
+                    this.packStore = new OwnFssPackStore(this.root, PACK_SEGMENT_MAX_SIZE, this.fsync);
+                }
+            }
+        }
+        return this.packStore;
+    }
+
+    private String getPackKey(String path) {
+        return NetUtil.standardizeUrl(path);
+    }
+
+    /**
+     * 读取打包存储的指定文件的输入流
+     *
+     * @return 输入流，文件未打包存储时返回null
+     */
+    private AttachInputStream openPacked(String path) throws IOException {
+        OwnFssPackStore packStore = getPackStore();
+        if (packStore != null) {
+            byte[] content = packStore.read(getPackKey(path));
+            if (content != null) {
+                return new AttachInputStream(new ByteArrayInputStream(content), this.salt);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 压缩打包存储，回收删除和覆盖产生的失效空间，可由应用定时调用
+     *
+     * @return 回收的段文件数
+     * @throws IOException 如果压缩过程中出现错误
+     */
+    public int compactPack() throws IOException {
+        OwnFssPackStore packStore = getPackStore();
+        return packStore == null ? 0 : packStore.compact(0.5);
+    }
+
+    /**
+     * 关闭打包存储打开的索引日志和段文件。作为Bean使用时由容器在关闭时调用
+     *
+     * @throws IOException 如果关闭过程中出现错误
+     */
+    public synchronized void shutdown() throws IOException {
+        if (this.packStore != null) {
+            this.packStore.close();
+            this.packStore = null;
+        }
+    }
+
     @Override
     public void write(InputStream in, String path, String filename) throws IOException {
+        OwnFssPackStore packStore = getPackStore();
+        if (packStore != null) {
+            // 多读一个字节以判断是否超过阈值
+            byte[] head = new byte[this.packThreshold + 1];
+            int length = IOUtils.read(in, head);
+            if (length <= this.packThreshold) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(length + 256);
+                try (OutputStream out = new AttachOutputStream(bytes, filename, this.salt)) {
+                    out.write(head, 0, length);
+                }
+                packStore.write(getPackKey(path), bytes.toByteArray());
+                deleteFile(path); // 原为普通文件的，已无用
+                return;
+            }
+            in = new SequenceInputStream(new ByteArrayInputStream(head, 0, length), in);
+        }
+        writeFile(in, path, filename);
+        if (packStore != null) { // 原为打包存储的，已无用
+            packStore.delete(getPackKey(path));
+        }
+    }
+
+    private void writeFile(InputStream in, String path, String filename) throws IOException {
+        File file = getShardFile(path);
+        ensureDirs(file);
         // 先上传内容到一个新建的临时文件中，以免在处理过程中原文件被读取
-        File tempFile = createTempFile(path);
-        OutputStream out = new AttachOutputStream(new FileOutputStream(tempFile), filename,
-                this.salt);
-        IOUtils.copy(in, out);
-        out.close();
+        File tempFile = createTempFile(file);
+        FileOutputStream fileOut = new FileOutputStream(tempFile);
+        OutputStream out = new AttachOutputStream(fileOut, filename, this.salt);
+        GZIPOutputStream gzipOut = null;
+        if (isCompressible(path)) {
+            out = gzipOut = new GZIPOutputStream(out, IOUtils.DEFAULT_BUFFER_SIZE);
+        }
+        try {
+            IOUtils.copy(in, out);
+            if (gzipOut != null) {
+                gzipOut.finish();
+            }
+            out.flush();
+            if (this.fsync) {
+                fileOut.getFD().sync();
+            }
+        } finally {
+            out.close();
+        }
 
-        // 然后删除原文件，修改临时文件名为原文件名
-        File file = getStorageFile(path);
-        if (file.exists()) {
-            file.delete();
+        // 然后以临时文件原子替换原文件
+        move(tempFile, file);
+        if (this.fsync) {
+            syncDir(file.getParentFile());
+        }
+        // 分片存储后，未迁移的原非分片文件已无用
+        File legacyFile = getLegacyFile(path);
+        if (!legacyFile.equals(file) && legacyFile.exists()) {
+            legacyFile.delete();
         }
-        tempFile.renameTo(file);
     }
 
-    private File createTempFile(String path) throws IOException {
+    private void move(File source, File target) throws IOException {
+        try {
+            moveFile(source, target);
+        } catch (NoSuchFileException e) {
+            if (!source.exists()) {
+                throw e;
+            }
+            // 目标目录可能已被外部删除，重新确保目录存在后重试
+            forgetDir(target);
+            ensureDirs(target);
+            moveFile(source, target);
+        }
+    }
+
+    private void moveFile(File source, File target) throws IOException {
+        try {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void syncDir(File dir) {
+        // 同步目录以确保改名操作持久化，部分操作系统不支持打开目录，忽略即可
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private File createTempFile(File file) throws IOException {
         // 形如：${正式文件名}_${32位UUID}.temp;
-        String relativePath = NetUtil.standardizeUrl(path) + Strings.UNDERLINE + StringUtil.uuid32()
-                + Strings.DOT + "temp";
-        File file = new File(this.root, relativePath);
-        ensureDirs(file);
-        file.createNewFile(); // 创建新文件以写入内容
-        file.setWritable(true);
-        return file;
+        File tempFile = new File(file.getParentFile(),
+                file.getName() + Strings.UNDERLINE + StringUtil.uuid32() + Strings.DOT + "temp");
+        try {
+            tempFile.createNewFile(); // 创建新文件以写入内容
+        } catch (IOException e) { // 目录可能已被外部删除，重新确保目录存在后重试
+            forgetDir(file);
+            ensureDirs(file);
+            tempFile.createNewFile();
+        }
+        tempFile.setWritable(true);
+        return tempFile;
     }
 
     /**
-     * 确保指定文件的所属目录存在
+     * 确保指定文件的所属目录存在，已确认存在的目录会被记录，之后无需再访问文件系统
      *
      * @param file 文件
      */
     private void ensureDirs(File file) {
-        File parent = file.getParentFile();
+        File dir = file.getParentFile();
+        String dirPath = dir.getPath();
+        if (this.knownDirs.contains(dirPath)) {
+            return;
+        }
+        File parent = dir;
         // 上级目录路径中可能已经存在一个同名文件，导致目录无法创建，此时修改该文件的名称
         while (parent != null) {
             if (parent.exists() && !parent.isDirectory()) {
@@ -84,18 +310,152 @@ public class OwnFssAccessor implements FssAccessor {
             }
             parent = parent.getParentFile();
         }
-        file.getParentFile().mkdirs(); // 确保目录存在
+        dir.mkdirs(); // 确保目录存在
+        if (dir.isDirectory()) {
+            if (this.knownDirs.size() >= MAX_KNOWN_DIRS) {
+                this.knownDirs.clear();
+            }
+            this.knownDirs.add(dirPath);
+        }
+    }
+
+    /**
+     * 不再认为指定文件的所属目录已存在，在目录可能已被外部删除时调用
+     *
+     * @param file 文件
+     */
+    private void forgetDir(File file) {
+        this.knownDirs.remove(file.getParentFile().getPath());
+    }
+
+    /**
+     * 获取指定存储路径在非分片布局下的文件
+     */
+    private File getLegacyFile(String path) {
+        return new File(this.root, NetUtil.standardizeUrl(path));
+    }
+
+    /**
+     * 获取指定存储路径在分片布局下的文件
+     */
+    private File getShardFile(String path) {
+        File file = getLegacyFile(path);
+        return this.shardLevels > 0 ? getShardFile(file.getParentFile(), file.getName()) : file;
+    }
+
+    private File getShardFile(File dir, String name) {
+        int levels = Math.min(this.shardLevels, getShardableLength(name) / 2);
+        for (int i = 0; i < levels; i++) {
+            dir = new File(dir, name.substring(i * 2, i * 2 + 2).toLowerCase());
+        }
+        return new File(dir, name);
     }
 
+    /**
+     * 获取文件名中可用于分片的长度，只取第一个.之前的字符，以使缩略图等衍生文件与原文件位于相同目录
+     */
+    private int getShardableLength(String name) {
+        int index = name.indexOf(Strings.DOT);
+        return index < 0 ? name.length() : index;
+    }
+
+    /**
+     * 获取指定存储路径对应的已有文件，读取时无需创建目录。分片存储的文件不存在时，尝试未迁移的非分片文件
+     */
     private File getStorageFile(String path) {
-        File file = new File(this.root, NetUtil.standardizeUrl(path));
-        ensureDirs(file);
+        File file = getShardFile(path);
+        if (this.shardLevels > 0 && !file.exists()) {
+            File legacyFile = getLegacyFile(path);
+            if (legacyFile.exists()) {
+                return legacyFile;
+            }
+        }
         return file;
     }
 
+    /**
+     * 将已有文件从原分片层级迁移到当前分片层级对应的目录中，迁移过程中可正常读写，未迁移的文件仍可被读取。
+     * 已符合当前分片层级布局的文件（包括已迁移的和迁移期间新写入的）不迁移，可重复执行；
+     * 其余文件中，不符合原分片层级布局的视为未分片的文件迁移
+     *
+     * @param fromLevels 原分片层级数，原未分片时为0
+     * @return 迁移的文件数量
+     * @throws IOException 如果遍历或移动文件时出现错误
+     */
+    public int migrateShards(int fromLevels) throws IOException {
+        // 先遍历出待迁移的文件再移动，以免遍历到移动后的文件而重复迁移
+        Map<File, File> migrations = new LinkedHashMap<>();
+        try (Stream<Path> stream = Files.walk(this.root.toPath())) {
+            Iterable<Path> paths = stream::iterator;
+            for (Path path : paths) {
+                if (!Files.isRegularFile(path) || isPacked(path) || path.getFileName().toString().endsWith(".temp")) {
+                    continue;
+                }
+                File file = path.toFile();
+                // 未分片时任意文件均符合布局，故当前层级为0时只能以是否符合原分片层级布局判断
+                if (this.shardLevels > 0 && getLogicalDir(file, this.shardLevels) != null) {
+                    continue;
+                }
+                File logicalDir = getLogicalDir(file, fromLevels);
+                if (logicalDir == null) {
+                    logicalDir = file.getParentFile();
+                }
+                File target = getShardFile(logicalDir, file.getName());
+                if (!target.equals(file)) {
+                    migrations.put(file, target);
+                }
+            }
+        }
+        int count = 0;
+        for (Map.Entry<File, File> migration : migrations.entrySet()) {
+            File file = migration.getKey();
+            File target = migration.getValue();
+            if (target.exists()) { // 迁移期间已按当前分片层级写入，原文件已过时
+                file.delete();
+            } else if (file.exists()) { // 遍历后可能已被删除
+                ensureDirs(target);
+                move(file, target);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 判断指定文件是否打包存储的段文件或索引文件
+     */
+    private boolean isPacked(Path file) {
+        return file.startsWith(this.root.toPath().resolve(OwnFssPackStore.DIR_NAME));
+    }
+
+    /**
+     * 获取指定已有文件按指定分片层级去掉分片目录后的逻辑目录
+     *
+     * @param file   已有文件
+     * @param levels 分片层级数
+     * @return 逻辑目录，文件所在目录不符合该分片层级的布局时返回null
+     */
+    private File getLogicalDir(File file, int levels) {
+        String name = file.getName();
+        File dir = file.getParentFile();
+        // 逐级比对上级目录名与文件名的对应字符
+        for (int level = Math.min(levels, getShardableLength(name) / 2) - 1; level >= 0; level--) {
+            if (dir == null || dir.equals(this.root)
+                    || !dir.getName().equalsIgnoreCase(name.substring(level * 2, level * 2 + 2))) {
+                return null;
+            }
+            dir = dir.getParentFile();
+        }
+        return dir;
+    }
+
     @Override
     public String getOriginalFilename(String path) {
         try {
+            AttachInputStream packedIn = openPacked(path);
+            if (packedIn != null) {
+                return packedIn.readAttachment();
+            }
             File file = getStorageFile(path);
             if (file.exists()) {
                 AttachInputStream in = new AttachInputStream(new FileInputStream(file), this.salt);
@@ -111,6 +471,16 @@ public class OwnFssAccessor implements FssAccessor {
 
     @Override
     public Long getLastModifiedTime(String path) {
+        if (this.packThreshold > 0) {
+            try {
+                Long lastModifiedTime = getPackStore().getLastModifiedTime(getPackKey(path));
+                if (lastModifiedTime != null) {
+                    return lastModifiedTime;
+                }
+            } catch (IOException e) {
+                LogUtil.error(getClass(), e);
+            }
+        }
         File file = getStorageFile(path);
         if (file.exists()) {
             return file.lastModified();
@@ -120,8 +490,23 @@ public class OwnFssAccessor implements FssAccessor {
 
     @Override
     public boolean read(String path, OutputStream out) throws IOException {
+        InputStream packedIn = openPacked(path);
+        if (packedIn != null) {
+            IOUtils.copy(packedIn, out);
+            return true;
+        }
         File file = getStorageFile(path);
-        if (file.exists()) { // 如果文件不存在，则需要从远程服务器读取内容，并缓存到本地文件
+        if (file.exists() && isCompressible(path)) {
+            try (InputStream in = openStream(file, path)) {
+                IOUtils.copy(in, out);
+            }
+            return true;
+        }
+        return read(file, out);
+    }
+
+    private boolean read(File file, OutputStream out) throws IOException {
+        if (file.exists()) { // 远程文件的本地缓存由TieredFssAccessor负责，此处只读取自有存储的文件
             InputStream in = new AttachInputStream(new FileInputStream(file), this.salt);
             IOUtils.copy(in, out);
             in.close();
@@ -130,4 +515,293 @@ public class OwnFssAccessor implements FssAccessor {
         return false;
     }
 
+    @Override
+    public InputStream openStream(String path) throws IOException {
+        InputStream packedIn = openPacked(path);
+        if (packedIn != null) {
+            return packedIn;
+        }
+        File file = getStorageFile(path);
+        return file.exists() ? openStream(file, path) : null;
+    }
+
+    /**
+     * 打开指定文件的输入流，压缩存储的解压读取
+     */
+    private InputStream openStream(File file, String path) throws IOException {
+        InputStream in = new AttachInputStream(new FileInputStream(file), this.salt);
+        if (isCompressible(path)) {
+            in = new BufferedInputStream(in);
+            if (isGzip(in)) {
+                return new GZIPInputStream(in, IOUtils.DEFAULT_BUFFER_SIZE);
+            }
+        }
+        return in;
+    }
+
+    /**
+     * 判断指定输入流的内容是否gzip格式，判断后输入流位置不变。开启压缩存储前写入的文件未压缩，需以此区分
+     */
+    private boolean isGzip(InputStream in) throws IOException {
+        in.mark(2);
+        int b0 = in.read();
+        int b1 = in.read();
+        in.reset();
+        return b0 == (GZIPInputStream.GZIP_MAGIC & 0xff) && b1 == (GZIPInputStream.GZIP_MAGIC >> 8);
+    }
+
+    @Override
+    public InputStream openEncodedStream(String path, String encoding) throws IOException {
+        if (GZIP_ENCODING.equalsIgnoreCase(encoding) && isCompressible(path)) {
+            File file = getStorageFile(path);
+            if (file.exists()) {
+                InputStream in = new BufferedInputStream(new AttachInputStream(new FileInputStream(file), this.salt));
+                if (isGzip(in)) {
+                    return in;
+                }
+                in.close();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean isEncodedStorage(String path, String encoding) {
+        return GZIP_ENCODING.equalsIgnoreCase(encoding) && isCompressible(path);
+    }
+
+    @Override
+    public boolean readThumbnail(String path, Map<String, String> parameters, OutputStream out) throws IOException {
+        OwnFssPackStore packStore = getPackStore();
+        if (packStore != null && packStore.contains(getPackKey(path))) { // 打包存储的小文件直接读取原文件
+            return read(path, out);
+        }
+        File file = getStorageFile(path);
+        OwnFssThumbnailer thumbnailer = OwnFssThumbnailer.of(parameters);
+        if (thumbnailer != null && file.exists()) {
+            // 缩略图缓存在原文件旁，形如：${原文件名}.${缩略图标识}.thumb
+            File thumbnailFile = new File(file.getParentFile(),
+                    file.getName() + Strings.DOT + thumbnailer.getKey() + Strings.DOT + "thumb");
+            if (thumbnailFile.exists() || generateThumbnail(file, thumbnailFile, thumbnailer)) {
+                return read(thumbnailFile, out);
+            }
+        }
+        return read(path, out); // 无法生成缩略图的，读取原文件
+    }
+
+    private boolean generateThumbnail(File file, File thumbnailFile, OwnFssThumbnailer thumbnailer)
+            throws IOException {
+        String key = thumbnailFile.getAbsolutePath();
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CompletableFuture<Boolean> generating = this.generatingThumbnails.putIfAbsent(key, future);
+        if (generating != null) { // 已有其它线程在生成相同缩略图，则等待其结果
+            try {
+                return generating.join();
+            } catch (Exception e) {
+                return false;
+            }
+        }
+        try {
+            boolean generated = false;
+            if (!thumbnailFile.exists()) {
+                AttachInputStream in = new AttachInputStream(new FileInputStream(file), this.salt);
+                String filename = in.readAttachment();
+                File tempFile = new File(thumbnailFile.getAbsolutePath() + Strings.UNDERLINE + StringUtil.uuid32()
+                        + Strings.DOT + "temp");
+                OutputStream out = new AttachOutputStream(new FileOutputStream(tempFile), filename, this.salt);
+                try {
+                    String formatName = FilenameUtils.getExtension(file.getName());
+                    generated = thumbnailer.generate(in, formatName, this.thumbnailMaxPixels, out);
+                } finally {
+                    in.close();
+                    out.close();
+                }
+                if (generated) {
+                    generated = tempFile.renameTo(thumbnailFile);
+                    this.metrics.increment(FssMetrics.THUMBNAIL_GENERATE, getProvider());
+                }
+                if (!generated) {
+                    tempFile.delete();
+                }
+            } else {
+                generated = true;
+            }
+            future.complete(generated);
+            return generated;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.generatingThumbnails.remove(key);
+        }
+    }
+
+    @Override
+    public boolean isListSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean isDeleteSupported() {
+        return true;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<String> consumer) throws IOException {
+        String standardPrefix = NetUtil.standardizeUrl(prefix);
+        // 前缀可能以不完整的文件名结尾，从其所属目录开始遍历
+        int index = standardPrefix.lastIndexOf(Strings.SLASH);
+        File dir = index > 0 ? new File(this.root, standardPrefix.substring(0, index)) : this.root;
+        // 打包存储的文件不在目录中，目录不存在时也需列出
+        OwnFssPackStore packStore = getPackStore();
+        if (packStore != null) {
+            packStore.list(standardPrefix, consumer);
+        }
+        if (!dir.isDirectory()) {
+            return;
+        }
+        Path rootPath = this.root.toPath();
+        try (Stream<Path> stream = Files.walk(dir.toPath())) {
+            stream.filter(Files::isRegularFile).filter(path -> !isPacked(path))
+                    .filter(path -> isStorageFile(path.getFileName().toString()))
+                    .forEach(path -> {
+                        File file = path.toFile();
+                        // 不符合当前分片层级布局的，为未迁移的非分片文件
+                        File logicalDir = getLogicalDir(file, this.shardLevels);
+                        File logicalFile = new File(logicalDir == null ? file.getParentFile() : logicalDir,
+                                file.getName());
+                        String storagePath = Strings.SLASH + rootPath.relativize(logicalFile.toPath()).toString()
+                                .replace(File.separatorChar, '/');
+                        if (storagePath.startsWith(standardPrefix)) {
+                            consumer.accept(storagePath);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * 判断指定文件名是否存储文件，而非临时文件或缩略图等衍生文件
+     */
+    private boolean isStorageFile(String name) {
+        return !name.endsWith(".temp") && !name.endsWith(".thumb");
+    }
+
+    @Override
+    public void delete(Collection<String> paths) throws IOException {
+        OwnFssPackStore packStore = getPackStore();
+        for (String path : paths) {
+            if (packStore != null) {
+                packStore.delete(getPackKey(path));
+            }
+            deleteFile(path);
+        }
+    }
+
+    private void deleteFile(String path) {
+        File file = getShardFile(path);
+        deleteWithThumbnails(file);
+        File legacyFile = getLegacyFile(path);
+        if (!legacyFile.equals(file) && legacyFile.exists()) {
+            deleteWithThumbnails(legacyFile);
+        }
+    }
+
+    private void deleteWithThumbnails(File file) {
+        file.delete();
+        deleteThumbnails(file); // 原文件可能已被移走，其缩略图仍需清理
+    }
+
+    /**
+     * 删除指定文件的缩略图，用于文件被删除或内容被替换时使缓存的缩略图失效
+     */
+    private void deleteThumbnails(File file) {
+        String thumbnailPrefix = file.getName() + Strings.DOT;
+        File[] thumbnailFiles = file.getParentFile().listFiles(
+                (dir, name) -> name.startsWith(thumbnailPrefix) && name.endsWith(".thumb"));
+        if (thumbnailFiles != null) {
+            for (File thumbnailFile : thumbnailFiles) {
+                thumbnailFile.delete();
+            }
+        }
+    }
+
+    @Override
+    public boolean copy(String sourcePath, String targetPath) throws IOException {
+        if (copyPacked(sourcePath, targetPath)) {
+            return true;
+        }
+        if (isCompressible(sourcePath) != isCompressible(targetPath)) { // 压缩存储方式不同，需读出后重新写入
+            return FssAccessor.super.copy(sourcePath, targetPath);
+        }
+        File source = getStorageFile(sourcePath);
+        if (!source.exists()) {
+            return false;
+        }
+        // 附加的原始文件名一并复制，先复制到临时文件再原子替换目标文件
+        File target = getShardFile(targetPath);
+        ensureDirs(target);
+        File tempFile = createTempFile(target);
+        Files.copy(source.toPath(), tempFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        move(tempFile, target);
+        deleteThumbnails(target); // 目标文件可能被覆盖，其原有的缩略图已失效
+        return true;
+    }
+
+    @Override
+    public boolean move(String sourcePath, String targetPath) throws IOException {
+        if (copyPacked(sourcePath, targetPath)) {
+            this.packStore.delete(getPackKey(sourcePath));
+            return true;
+        }
+        if (isCompressible(sourcePath) != isCompressible(targetPath)) {
+            return FssAccessor.super.move(sourcePath, targetPath);
+        }
+        File source = getStorageFile(sourcePath);
+        if (!source.exists()) {
+            return false;
+        }
+        File target = getShardFile(targetPath);
+        ensureDirs(target);
+        move(source, target);
+        deleteWithThumbnails(source); // 清理源文件的缩略图
+        deleteThumbnails(target); // 目标文件可能被覆盖，其原有的缩略图已失效
+        return true;
+    }
+
+    /**
+     * 复制打包存储的文件，附加的原始文件名一并复制
+     *
+     * @return 源文件是否打包存储
+     */
+    private boolean copyPacked(String sourcePath, String targetPath) throws IOException {
+        OwnFssPackStore packStore = getPackStore();
+        if (packStore != null) {
+            byte[] content = packStore.read(getPackKey(sourcePath));
+            if (content != null) {
+                packStore.write(getPackKey(targetPath), content);
+                deleteFile(targetPath);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public int purgeTemp(long expiredTime) throws IOException {
+        int count = 0;
+        // 惰性遍历，边遍历边删除，不一次性加载全部文件
+        try (Stream<Path> stream = Files.walk(this.root.toPath())) {
+            Iterable<Path> paths = stream::iterator;
+            for (Path path : paths) {
+                if (TEMP_FILENAME_PATTERN.matcher(path.getFileName().toString()).matches()) {
+                    File file = path.toFile();
+                    if (file.isFile() && file.lastModified() < expiredTime && file.delete()) {
+                        count++;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
 }
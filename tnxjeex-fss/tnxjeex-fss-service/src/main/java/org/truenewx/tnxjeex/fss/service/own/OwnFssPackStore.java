@@ -0,0 +1,346 @@
+package org.truenewx.tnxjeex.fss.service.own;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+import org.truenewx.tnxjee.core.util.LogUtil;
+
+/**
+ * 自有文件存储的小文件打包存储。小文件的内容依次追加到段文件中，文件位置记录在追加写入的索引日志中，
+ * 启动时回放索引日志重建内存索引，避免每个小文件占用一个文件系统节点。删除和覆盖产生的失效空间通过压缩回收
+ *
+ * @author jianglei
+ */
+class OwnFssPackStore {
+
+    static final String DIR_NAME = ".pack";
+
+    private static final String INDEX_FILENAME = "index.log";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int DELETED_LENGTH = -1;
+
+    private final File dir;
+    private final long segmentMaxSize;
+    private final boolean fsync;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<Integer, FileChannel> segments = new ConcurrentHashMap<>();
+    // 读取时持读锁，删除段文件时持写锁，以免读取中的段文件被关闭
+    private final ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private DataOutputStream indexOut;
+    private FileOutputStream indexFileOut;
+    private int currentSegment;
+
+    OwnFssPackStore(File root, long segmentMaxSize, boolean fsync) throws IOException {
+        this.dir = new File(root, DIR_NAME);
+        this.dir.mkdirs();
+        this.segmentMaxSize = segmentMaxSize;
+        this.fsync = fsync;
+        File indexFile = new File(this.dir, INDEX_FILENAME);
+        long validLength = replayIndex(indexFile);
+        // 截掉异常中断时写入不完整的索引记录
+        if (indexFile.exists() && indexFile.length() > validLength) {
+            try (FileChannel channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.WRITE)) {
+                channel.truncate(validLength);
+            }
+        }
+        openIndex(indexFile);
+        File[] segmentFiles = this.dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (segmentFiles != null) {
+            for (File segmentFile : segmentFiles) {
+                this.currentSegment = Math.max(this.currentSegment, getSegmentNo(segmentFile.getName()));
+            }
+        }
+    }
+
+    private long replayIndex(File indexFile) throws IOException {
+        long validLength = 0;
+        if (indexFile.exists()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(indexFile)))) {
+                while (true) {
+                    String path = in.readUTF();
+                    Entry entry = new Entry(in.readInt(), in.readLong(), in.readInt(), in.readLong());
+                    if (entry.length == DELETED_LENGTH) {
+                        this.entries.remove(path);
+                    } else {
+                        this.entries.put(path, entry);
+                    }
+                    validLength += getRecordLength(path);
+                }
+            } catch (EOFException | UTFDataFormatException ignored) {
+                // 读到末尾或写入不完整的记录，不完整的记录及其后的内容均不计入有效长度，由调用者截掉
+            }
+        }
+        return validLength;
+    }
+
+    private long getRecordLength(String path) {
+        int utfLength = 0;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            utfLength += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+        }
+        return 2 + utfLength + 4 + 8 + 4 + 8;
+    }
+
+    private void openIndex(File indexFile) throws IOException {
+        this.indexFileOut = new FileOutputStream(indexFile, true);
+        this.indexOut = new DataOutputStream(new BufferedOutputStream(this.indexFileOut));
+    }
+
+    private int getSegmentNo(String segmentFilename) {
+        return Integer.parseInt(
+                segmentFilename.substring(SEGMENT_PREFIX.length(), segmentFilename.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private File getSegmentFile(int segmentNo) {
+        return new File(this.dir, SEGMENT_PREFIX + segmentNo + SEGMENT_SUFFIX);
+    }
+
+    private FileChannel getSegment(int segmentNo) {
+        return this.segments.computeIfAbsent(segmentNo, no -> {
+            try {
+                return FileChannel.open(getSegmentFile(no).toPath(), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    boolean contains(String path) {
+        return this.entries.containsKey(path);
+    }
+
+    /**
+     * 写入指定路径的文件内容，已存在时覆盖
+     *
+     * @param path    存储路径
+     * @param content 已编码的存储内容
+     */
+    synchronized void write(String path, byte[] content) throws IOException {
+        write(path, content, System.currentTimeMillis());
+    }
+
+    private void write(String path, byte[] content, long lastModified) throws IOException {
+        FileChannel segment = getSegment(this.currentSegment);
+        long offset = segment.size();
+        if (offset > 0 && offset + content.length > this.segmentMaxSize) { // 当前段文件已满则新建段文件
+            this.currentSegment++;
+            segment = getSegment(this.currentSegment);
+            offset = 0;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            position += segment.write(buffer, position);
+        }
+        if (this.fsync) {
+            segment.force(false);
+        }
+        Entry entry = new Entry(this.currentSegment, offset, content.length, lastModified);
+        appendIndex(path, entry);
+        this.entries.put(path, entry);
+    }
+
+    private void appendIndex(String path, Entry entry) throws IOException {
+        this.indexOut.writeUTF(path);
+        this.indexOut.writeInt(entry.segmentNo);
+        this.indexOut.writeLong(entry.offset);
+        this.indexOut.writeInt(entry.length);
+        this.indexOut.writeLong(entry.lastModified);
+        this.indexOut.flush();
+        if (this.fsync) {
+            this.indexFileOut.getFD().sync();
+        }
+    }
+
+    /**
+     * 读取指定路径的已编码存储内容
+     *
+     * @param path 存储路径
+     * @return 已编码的存储内容，不存在时返回null
+     */
+    byte[] read(String path) throws IOException {
+        this.segmentLock.readLock().lock();
+        try {
+            Entry entry = this.entries.get(path);
+            if (entry == null) {
+                return null;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(entry.length);
+            FileChannel segment = getSegment(entry.segmentNo);
+            long position = entry.offset;
+            while (buffer.hasRemaining()) {
+                int count = segment.read(buffer, position);
+                if (count < 0) {
+                    throw new EOFException(path);
+                }
+                position += count;
+            }
+            return buffer.array();
+        } finally {
+            this.segmentLock.readLock().unlock();
+        }
+    }
+
+    Long getLastModifiedTime(String path) {
+        Entry entry = this.entries.get(path);
+        return entry == null ? null : entry.lastModified;
+    }
+
+    synchronized boolean delete(String path) throws IOException {
+        Entry entry = this.entries.remove(path);
+        if (entry != null) {
+            appendIndex(path, new Entry(entry.segmentNo, entry.offset, DELETED_LENGTH, System.currentTimeMillis()));
+            return true;
+        }
+        return false;
+    }
+
+    void list(String prefix, Consumer<String> consumer) {
+        for (String path : this.entries.keySet()) {
+            if (path.startsWith(prefix)) {
+                consumer.accept(path);
+            }
+        }
+    }
+
+    /**
+     * 压缩存储，将有效内容比例低于指定比例的段文件中的有效内容迁移到当前段文件后删除该段文件，并重写索引日志
+     *
+     * @param minLiveRatio 段文件的最小有效内容比例
+     * @return 删除的段文件数
+     * @throws IOException 如果压缩过程中出现错误
+     */
+    synchronized int compact(double minLiveRatio) throws IOException {
+        Map<Integer, Long> liveBytes = new HashMap<>();
+        for (Entry entry : this.entries.values()) {
+            liveBytes.merge(entry.segmentNo, (long) entry.length, Long::sum);
+        }
+        List<Integer> compactingSegments = new ArrayList<>();
+        File[] segmentFiles = this.dir.listFiles((d, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (segmentFiles != null) {
+            for (File segmentFile : segmentFiles) {
+                int segmentNo = getSegmentNo(segmentFile.getName());
+                long size = segmentFile.length();
+                if (segmentNo != this.currentSegment && size > 0
+                        && liveBytes.getOrDefault(segmentNo, 0L) < size * minLiveRatio) {
+                    compactingSegments.add(segmentNo);
+                }
+            }
+        }
+        if (compactingSegments.isEmpty()) {
+            return 0;
+        }
+        // 迁移有效内容，迁移过程中可正常读取，读到的始终是完整的内容
+        for (Map.Entry<String, Entry> mapEntry : new ArrayList<>(this.entries.entrySet())) {
+            if (compactingSegments.contains(mapEntry.getValue().segmentNo)) {
+                byte[] content = read(mapEntry.getKey());
+                if (content != null) {
+                    write(mapEntry.getKey(), content, mapEntry.getValue().lastModified);
+                }
+            }
+        }
+        if (this.fsync) {
+            getSegment(this.currentSegment).force(false);
+        }
+        // 索引日志替换失败时保留段文件，迁移时追加的索引记录已写入原索引日志，原索引日志仍然有效
+        if (!rewriteIndex()) {
+            return 0;
+        }
+        this.segmentLock.writeLock().lock();
+        try {
+            for (int segmentNo : compactingSegments) {
+                FileChannel segment = this.segments.remove(segmentNo);
+                if (segment != null) {
+                    segment.close();
+                }
+                getSegmentFile(segmentNo).delete();
+            }
+        } finally {
+            this.segmentLock.writeLock().unlock();
+        }
+        return compactingSegments.size();
+    }
+
+    /**
+     * 以当前有效的索引重写索引日志，先写入临时文件再替换，以免中断导致索引丢失
+     *
+     * @return 是否替换成功，替换失败时继续使用原索引日志
+     */
+    private boolean rewriteIndex() throws IOException {
+        File indexFile = new File(this.dir, INDEX_FILENAME);
+        File tempFile = new File(this.dir, INDEX_FILENAME + ".temp");
+        try (FileOutputStream fileOut = new FileOutputStream(tempFile);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut))) {
+            for (Map.Entry<String, Entry> mapEntry : this.entries.entrySet()) {
+                Entry entry = mapEntry.getValue();
+                out.writeUTF(mapEntry.getKey());
+                out.writeInt(entry.segmentNo);
+                out.writeLong(entry.offset);
+                out.writeInt(entry.length);
+                out.writeLong(entry.lastModified);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        }
+        this.indexOut.close();
+        boolean replaced = true;
+        try {
+            Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LogUtil.error(getClass(), e);
+            tempFile.delete();
+            replaced = false;
+        }
+        openIndex(indexFile);
+        return replaced;
+    }
+
+    /**
+     * 关闭索引日志和全部段文件
+     *
+     * @throws IOException 如果关闭过程中出现错误
+     */
+    synchronized void close() throws IOException {
+        this.segmentLock.writeLock().lock();
+        try {
+            this.indexOut.close();
+            for (FileChannel segment : this.segments.values()) {
+                segment.close();
+            }
+            this.segments.clear();
+        } finally {
+            this.segmentLock.writeLock().unlock();
+        }
+    }
+
+    private static class Entry {
+
+        private final int segmentNo;
+        private final long offset;
+        private final int length;
+        private final long lastModified;
+
+        Entry(int segmentNo, long offset, int length, long lastModified) {
+            this.segmentNo = segmentNo;
+            this.offset = offset;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+    }
+
+}
@@ -0,0 +1,126 @@
+package org.truenewx.tnxjeex.fss.service.own;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.imageio.ImageIO;
+
+import org.truenewx.tnxjeex.fss.service.util.FssImageUtil;
+
+/**
+ * 自有文件存储服务的缩略图生成器，按访问策略的缩略图参数等比缩小图片，不放大
+ *
+ * @author jianglei
+ */
+class OwnFssThumbnailer {
+
+    // 兼容阿里云图片处理参数的写法，如：image/resize,m_lfit,w_100,h_100
+    private static final Pattern WIDTH_PATTERN = Pattern.compile("(?:^|[,/])w_(\\d+)");
+    private static final Pattern HEIGHT_PATTERN = Pattern.compile("(?:^|[,/])h_(\\d+)");
+
+    private int width;
+    private int height;
+
+    private OwnFssThumbnailer(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * 根据缩略图参数集构建缩略图生成器
+     *
+     * @param parameters 缩略图参数集，支持w/width、h/height参数，或值中包含w_、h_形式的阿里云图片处理参数
+     * @return 缩略图生成器，参数集中未指定尺寸时返回null
+     */
+    public static OwnFssThumbnailer of(Map<String, String> parameters) {
+        int width = 0;
+        int height = 0;
+        if (parameters != null) {
+            for (Map.Entry<String, String> entry : parameters.entrySet()) {
+                String key = entry.getKey();
+                String value = entry.getValue();
+                if (value == null) {
+                    continue;
+                }
+                if ("w".equals(key) || "width".equals(key)) {
+                    width = parseInt(value);
+                } else if ("h".equals(key) || "height".equals(key)) {
+                    height = parseInt(value);
+                } else {
+                    width = Math.max(width, find(WIDTH_PATTERN, value));
+                    height = Math.max(height, find(HEIGHT_PATTERN, value));
+                }
+            }
+        }
+        return width > 0 || height > 0 ? new OwnFssThumbnailer(width, height) : null;
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static int find(Pattern pattern, String value) {
+        Matcher matcher = pattern.matcher(value);
+        return matcher.find() ? parseInt(matcher.group(1)) : 0;
+    }
+
+    /**
+     * @return 缩略图变体的标识，相同尺寸限定的缩略图共用同一变体
+     */
+    public String getKey() {
+        return this.width + "x" + this.height;
+    }
+
+    /**
+     * 生成缩略图
+     *
+     * @param in         原图输入流
+     * @param formatName 图片格式名称，一般为扩展名
+     * @param maxPixels  原图最大像素数，小于等于0时不限定
+     * @param out        缩略图输出流
+     * @return 是否生成成功，原图不是可识别的图片、像素数超过限定或格式不支持写出时返回false
+     * @throws IOException 如果读写过程中出现错误
+     */
+    public boolean generate(InputStream in, String formatName, long maxPixels, OutputStream out)
+            throws IOException {
+        BufferedImage image = FssImageUtil.read(in, maxPixels);
+        if (image == null) {
+            return false;
+        }
+        double scale = 1;
+        if (this.width > 0) {
+            scale = Math.min(scale, (double) this.width / image.getWidth());
+        }
+        if (this.height > 0) {
+            scale = Math.min(scale, (double) this.height / image.getHeight());
+        }
+        int targetWidth = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int targetHeight = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        // JPEG不支持透明通道，需转换为RGB
+        boolean opaque = "jpg".equalsIgnoreCase(formatName) || "jpeg".equalsIgnoreCase(formatName)
+                || "bmp".equalsIgnoreCase(formatName);
+        int type = opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB;
+        BufferedImage thumbnail = new BufferedImage(targetWidth, targetHeight, type);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(image, 0, 0, targetWidth, targetHeight, null);
+        } finally {
+            graphics.dispose();
+        }
+        return ImageIO.write(thumbnail, formatName, out);
+    }
+
+}
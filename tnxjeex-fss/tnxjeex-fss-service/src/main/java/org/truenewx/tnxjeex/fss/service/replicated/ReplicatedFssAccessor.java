@@ -0,0 +1,476 @@
+package org.truenewx.tnxjeex.fss.service.replicated;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.util.Assert;
+import org.truenewx.tnxjee.core.Strings;
+import org.truenewx.tnxjee.core.util.LogUtil;
+import org.truenewx.tnxjee.core.util.StringUtil;
+import org.truenewx.tnxjeex.fss.service.FssAccessor;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetrics;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetricsAware;
+import org.truenewx.tnxjeex.fss.service.model.FssProvider;
+
+/**
+ * 多副本的文件存储访问器。同步写入主访问器后，经持久化的复制队列异步写入各从访问器；
+ * 读取内容时优先从延迟最低的健康副本读取，元信息以主访问器为准。
+ * 典型用法为以自有访问器为主、以远程访问器为从，兼顾本地读取速度与远程存储的可靠性。
+ * 作为Bean使用时，其服务提供商与主访问器相同，故主访问器不能再作为Bean
+ *
+ * @author jianglei
+ */
+public class ReplicatedFssAccessor implements FssAccessor, FssMetricsAware {
+
+    private static final String TASK_SUFFIX = ".task";
+    private static final String FAILED_SUFFIX = ".failed";
+    private static final String WRITE = "WRITE";
+    private static final String DELETE = "DELETE";
+    private static final double LATENCY_WEIGHT = 0.2; // 延迟指数移动平均中最新一次的权重
+
+    private final FssAccessor primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final File queueDir;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private boolean fsync;
+    private int retryIntervalSeconds = 30;
+    private int maxRetryIntervalSeconds = 60 * 60;
+    private int maxAttempts = 10;
+    // 任务文件名-已尝试次数的映射集
+    private final Map<String, Integer> attempts = new ConcurrentHashMap<>();
+    private int unhealthySeconds = 60; // 副本读取失败后视为不健康的秒数
+    private long clockSkewToleranceMillis = 2000;
+    private FssMetrics metrics = FssMetrics.NONE;
+
+    /**
+     * @param primary          主访问器
+     * @param secondaries      从访问器集
+     * @param queueDir         复制队列的持久化目录
+     * @param replicateThreads 执行复制的线程数
+     */
+    public ReplicatedFssAccessor(FssAccessor primary, List<FssAccessor> secondaries, String queueDir,
+            int replicateThreads) {
+        Assert.notEmpty(secondaries, "secondaries must not be empty");
+        this.primary = primary;
+        this.replicas.add(new Replica(primary, 0));
+        for (int i = 0; i < secondaries.size(); i++) {
+            this.replicas.add(new Replica(secondaries.get(i), i + 1));
+        }
+        this.queueDir = new File(queueDir);
+        this.queueDir.mkdirs();
+        Assert.isTrue(this.queueDir.isDirectory() && this.queueDir.canWrite(),
+                "queueDir must be a writable directory");
+        this.scheduler = Executors.newScheduledThreadPool(replicateThreads, runnable -> {
+            Thread thread = new Thread(runnable, "fss-replicator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 恢复上次未完成的复制任务
+        File[] taskFiles = this.queueDir.listFiles((dir, name) -> name.endsWith(TASK_SUFFIX));
+        if (taskFiles != null) {
+            for (File taskFile : taskFiles) {
+                this.pendingCount.incrementAndGet();
+                this.scheduler.execute(() -> replicate(taskFile));
+            }
+        }
+    }
+
+    /**
+     * @param fsync 复制任务入队时是否同步到磁盘，开启后可避免断电导致的复制任务丢失
+     */
+    public void setFsync(boolean fsync) {
+        this.fsync = fsync;
+    }
+
+    /**
+     * @param retryIntervalSeconds 复制首次失败后的重试间隔秒数，之后每次失败间隔加倍，默认为30
+     */
+    public void setRetryIntervalSeconds(int retryIntervalSeconds) {
+        this.retryIntervalSeconds = retryIntervalSeconds;
+    }
+
+    /**
+     * @param maxRetryIntervalSeconds 复制失败后的最大重试间隔秒数，默认为3600
+     */
+    public void setMaxRetryIntervalSeconds(int maxRetryIntervalSeconds) {
+        this.maxRetryIntervalSeconds = maxRetryIntervalSeconds;
+    }
+
+    /**
+     * @param maxAttempts 复制任务的最大尝试次数，均失败时任务文件改名为以.failed结尾，不再重试，默认为10
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param unhealthySeconds 副本读取失败后被视为不健康而不被优先读取的秒数
+     */
+    public void setUnhealthySeconds(int unhealthySeconds) {
+        this.unhealthySeconds = unhealthySeconds;
+    }
+
+    /**
+     * 各副本的最后修改时间来自各自的时钟，精度也可能不同（如OSS仅精确到秒），比较前均截断到秒，
+     * 从副本的最后修改时间早于主副本不超过该容差时仍视为已完成复制，以免时钟偏差导致从副本始终被视为过期
+     *
+     * @param clockSkewToleranceMillis 副本间时钟偏差的容差毫秒数，默认为2000
+     */
+    public void setClockSkewToleranceMillis(long clockSkewToleranceMillis) {
+        this.clockSkewToleranceMillis = clockSkewToleranceMillis;
+    }
+
+    @Override
+    public void setMetrics(FssMetrics metrics) {
+        this.metrics = metrics;
+        metrics.registerGauge(FssMetrics.REPLICATION_PENDING, getProvider(), this.pendingCount::get);
+        for (Replica replica : this.replicas) {
+            if (replica.accessor instanceof FssMetricsAware) {
+                ((FssMetricsAware) replica.accessor).setMetrics(metrics);
+            }
+        }
+    }
+
+    /**
+     * @return 尚未完成的复制任务数
+     */
+    public int getPendingCount() {
+        return this.pendingCount.get();
+    }
+
+    /**
+     * 停止复制，未完成的复制任务保留在队列中，下次启动时继续
+     */
+    public void shutdown() {
+        this.scheduler.shutdown();
+    }
+
+    @Override
+    public FssProvider getProvider() {
+        return this.primary.getProvider();
+    }
+
+    @Override
+    public void write(InputStream in, String path, String filename) throws IOException {
+        this.primary.write(in, path, filename);
+        enqueue(WRITE, path);
+    }
+
+    /**
+     * 复制任务入队，任务先持久化为队列目录中的文件，全部从访问器执行成功后删除
+     */
+    private void enqueue(String operation, String path) throws IOException {
+        File taskFile = new File(this.queueDir, StringUtil.uuid32() + TASK_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(taskFile)) {
+            out.write((operation + Strings.SPACE + path).getBytes(StandardCharsets.UTF_8));
+            if (this.fsync) {
+                out.getFD().sync();
+            }
+        }
+        this.pendingCount.incrementAndGet();
+        this.scheduler.execute(() -> replicate(taskFile));
+    }
+
+    private void replicate(File taskFile) {
+        try {
+            String task = new String(Files.readAllBytes(taskFile.toPath()), StandardCharsets.UTF_8);
+            int index = task.indexOf(Strings.SPACE);
+            String operation = index > 0 ? task.substring(0, index) : null;
+            if ((!WRITE.equals(operation) && !DELETE.equals(operation)) || index == task.length() - 1) {
+                // 格式错误的任务无法执行，重试亦无意义
+                fail(taskFile, new IllegalArgumentException("Invalid replication task: " + task));
+                return;
+            }
+            String path = task.substring(index + 1);
+            for (int i = 1; i < this.replicas.size(); i++) {
+                FssAccessor secondary = this.replicas.get(i).accessor;
+                if (WRITE.equals(operation)) {
+                    replicateWrite(secondary, path);
+                } else if (DELETE.equals(operation) && this.primary.getLastModifiedTime(path) == null) {
+                    // 任务可能乱序执行，主访问器中已重新写入的文件不能删除
+                    secondary.delete(Collections.singletonList(path));
+                }
+            }
+            taskFile.delete();
+            this.attempts.remove(taskFile.getName());
+            this.pendingCount.decrementAndGet();
+        } catch (Exception e) { // 保留任务文件，稍后重试，已复制的从访问器重复写入相同内容无副作用
+            int attempts = this.attempts.merge(taskFile.getName(), 1, Integer::sum);
+            if (attempts >= this.maxAttempts) {
+                fail(taskFile, e);
+                return;
+            }
+            LogUtil.error(getClass(), e);
+            this.metrics.increment(FssMetrics.REPLICATION_RETRY, getProvider());
+            // 按失败次数指数退避，以免持续故障时频繁重试
+            long delaySeconds = Math.min((long) this.retryIntervalSeconds << Math.min(attempts - 1, 20),
+                    this.maxRetryIntervalSeconds);
+            this.scheduler.schedule(() -> replicate(taskFile), delaySeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 将无法完成的任务移出队列，任务文件改名后保留在队列目录中，以便排查和人工处理，可经{@link #repair(String)}修复副本差异
+     */
+    private void fail(File taskFile, Exception e) {
+        LogUtil.error(getClass(), e);
+        this.attempts.remove(taskFile.getName());
+        File failedFile = new File(taskFile.getParentFile(), taskFile.getName() + FAILED_SUFFIX);
+        if (!taskFile.renameTo(failedFile)) {
+            taskFile.delete();
+        }
+        this.pendingCount.decrementAndGet();
+        this.metrics.increment(FssMetrics.REPLICATION_FAILED, getProvider());
+    }
+
+    private void replicateWrite(FssAccessor secondary, String path) throws IOException {
+        // 从主访问器读取最新内容，期间文件可能已被删除（随后会有删除任务），则无需复制
+        InputStream in = this.primary.openStream(path);
+        if (in != null) {
+            try {
+                secondary.write(in, path, this.primary.getOriginalFilename(path));
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Override
+    public String getOriginalFilename(String path) {
+        return this.primary.getOriginalFilename(path);
+    }
+
+    @Override
+    public Map<String, String> getOriginalFilenames(Collection<String> paths) {
+        return this.primary.getOriginalFilenames(paths);
+    }
+
+    @Override
+    public Long getLastModifiedTime(String path) {
+        return this.primary.getLastModifiedTime(path);
+    }
+
+    @Override
+    public boolean read(String path, OutputStream out) throws IOException {
+        InputStream in = openStream(path);
+        if (in == null) {
+            return false;
+        }
+        try {
+            IOUtils.copy(in, out);
+        } finally {
+            in.close();
+        }
+        return true;
+    }
+
+    @Override
+    public InputStream openStream(String path) throws IOException {
+        // 以主访问器判定文件是否存在，以免读到从访问器中已删除或已被覆盖的文件；主访问器故障时才直接从从访问器读取
+        Long primaryModifiedTime = null;
+        try {
+            primaryModifiedTime = this.primary.getLastModifiedTime(path);
+            if (primaryModifiedTime == null) {
+                return null;
+            }
+        } catch (RuntimeException e) {
+            LogUtil.error(getClass(), e);
+            this.replicas.get(0).onFailed();
+        }
+        IOException exception = null;
+        // 按延迟从低到高依次尝试，从访问器可能尚未完成复制，此时尝试下一个
+        for (Replica replica : getReadOrderedReplicas()) {
+            long startTime = System.nanoTime();
+            try {
+                if (replica.index > 0 && primaryModifiedTime != null) {
+                    if (isStale(replica.accessor.getLastModifiedTime(path), primaryModifiedTime)) { // 尚未完成复制
+                        continue;
+                    }
+                }
+                InputStream in = replica.accessor.openStream(path);
+                replica.onSucceeded(System.nanoTime() - startTime);
+                if (in != null) {
+                    return in;
+                }
+            } catch (IOException | RuntimeException e) {
+                replica.onFailed();
+                exception = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        return null;
+    }
+
+    /**
+     * 判断从副本是否比主副本旧，最后修改时间均截断到秒后比较，并容许一定的时钟偏差
+     */
+    private boolean isStale(Long modifiedTime, Long primaryModifiedTime) {
+        if (modifiedTime == null) {
+            return true;
+        }
+        if (primaryModifiedTime == null) {
+            return false;
+        }
+        long seconds = TimeUnit.MILLISECONDS.toSeconds(modifiedTime);
+        long primarySeconds = TimeUnit.MILLISECONDS.toSeconds(primaryModifiedTime);
+        return TimeUnit.SECONDS.toMillis(primarySeconds - seconds) > this.clockSkewToleranceMillis;
+    }
+
+    private List<Replica> getReadOrderedReplicas() {
+        long now = System.currentTimeMillis();
+        List<Replica> replicas = new ArrayList<>(this.replicas);
+        // 健康的优先，同为健康或不健康的按平均延迟排序
+        replicas.sort(Comparator.comparing((Replica replica) -> !replica.isHealthy(now))
+                .thenComparingDouble(replica -> replica.latencyNanos));
+        return replicas;
+    }
+
+    @Override
+    public InputStream openEncodedStream(String path, String encoding) throws IOException {
+        // 各副本的存储格式可能不同，以主访问器为准
+        return this.primary.openEncodedStream(path, encoding);
+    }
+
+    @Override
+    public boolean isEncodedStorage(String path, String encoding) {
+        return this.primary.isEncodedStorage(path, encoding);
+    }
+
+    @Override
+    public boolean readThumbnail(String path, Map<String, String> parameters, OutputStream out)
+            throws IOException {
+        // 缩略图依赖访问器的生成能力，以主访问器为准
+        return this.primary.readThumbnail(path, parameters, out);
+    }
+
+    @Override
+    public boolean isListSupported() {
+        return this.primary.isListSupported();
+    }
+
+    @Override
+    public boolean isDeleteSupported() {
+        // 删除需复制到全部副本
+        for (Replica replica : this.replicas) {
+            if (!replica.accessor.isDeleteSupported()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void list(String prefix, Consumer<String> consumer) throws IOException {
+        this.primary.list(prefix, consumer);
+    }
+
+    @Override
+    public void delete(Collection<String> paths) throws IOException {
+        this.primary.delete(paths);
+        for (String path : paths) {
+            enqueue(DELETE, path);
+        }
+    }
+
+    @Override
+    public boolean copy(String sourcePath, String targetPath) throws IOException {
+        if (this.primary.copy(sourcePath, targetPath)) {
+            enqueue(WRITE, targetPath);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean move(String sourcePath, String targetPath) throws IOException {
+        if (this.primary.move(sourcePath, targetPath)) {
+            enqueue(WRITE, targetPath);
+            enqueue(DELETE, sourcePath);
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int purgeTemp(long expiredTime) throws IOException {
+        int count = 0;
+        for (Replica replica : this.replicas) {
+            count += replica.accessor.purgeTemp(expiredTime);
+        }
+        return count;
+    }
+
+    /**
+     * 修复副本间的差异，将主访问器中存在而从访问器中缺失或较旧的文件重新加入复制队列，
+     * 边列出边入队，不在内存中汇集全部差异文件
+     *
+     * @param prefix 存储路径前缀
+     * @return 加入复制队列的文件数
+     * @throws IOException 如果列出文件或入队时出现错误
+     */
+    public int repair(String prefix) throws IOException {
+        AtomicInteger count = new AtomicInteger();
+        try {
+            this.primary.list(prefix, path -> {
+                Long primaryModifiedTime = this.primary.getLastModifiedTime(path);
+                for (int i = 1; i < this.replicas.size(); i++) {
+                    if (isStale(this.replicas.get(i).accessor.getLastModifiedTime(path), primaryModifiedTime)) {
+                        try {
+                            enqueue(WRITE, path);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        count.incrementAndGet();
+                        break;
+                    }
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return count.get();
+    }
+
+    private class Replica {
+
+        private final FssAccessor accessor;
+        private final int index;
+        private volatile double latencyNanos;
+        private volatile long unhealthyUntil;
+
+        Replica(FssAccessor accessor, int index) {
+            this.accessor = accessor;
+            this.index = index;
+        }
+
+        boolean isHealthy(long now) {
+            return now >= this.unhealthyUntil;
+        }
+
+        void onSucceeded(long nanos) {
+            this.latencyNanos = this.latencyNanos == 0 ? nanos
+                    : this.latencyNanos * (1 - LATENCY_WEIGHT) + nanos * LATENCY_WEIGHT;
+            this.unhealthyUntil = 0;
+        }
+
+        void onFailed() {
+            this.unhealthyUntil = System.currentTimeMillis() + ReplicatedFssAccessor.this.unhealthySeconds * 1000L;
+            ReplicatedFssAccessor.this.metrics.increment(String.format(FssMetrics.REPLICA_READ_FAILURE, this.index),
+                    getProvider());
+        }
+
+    }
+
+}
@@ -0,0 +1,385 @@
+package org.truenewx.tnxjeex.fss.service.tiered;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.springframework.util.Assert;
+import org.truenewx.tnxjee.core.Strings;
+import org.truenewx.tnxjee.core.util.LogUtil;
+import org.truenewx.tnxjee.core.util.NetUtil;
+import org.truenewx.tnxjee.core.util.StringUtil;
+import org.truenewx.tnxjeex.fss.service.FssAccessor;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetrics;
+import org.truenewx.tnxjeex.fss.service.metrics.FssMetricsAware;
+import org.truenewx.tnxjeex.fss.service.model.FssProvider;
+
+/**
+ * 分层的文件存储访问器，以限定容量的本地磁盘缓存远程访问器的文件内容，按最近最少使用淘汰。
+ * 作为Bean使用时，其服务提供商与远程访问器相同，故远程访问器不能再作为Bean
+ *
+ * @author jianglei
+ */
+public class TieredFssAccessor implements FssAccessor, FssMetricsAware {
+
+    private FssAccessor remote;
+    private File cacheDir;
+    private long maxBytes;
+    // 缓存文件相对路径-文件大小的映射集，按访问顺序排列，以便淘汰最近最少使用的
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+    // 获取中的文件，以合并对同一文件的并发获取
+    private final Map<String, CompletableFuture<Boolean>> fetchings = new ConcurrentHashMap<>();
+    // 超过缓存容量而不缓存的文件，之后直接从远程读取，无需再尝试获取
+    private final Set<String> oversizedKeys = ConcurrentHashMap.newKeySet();
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder hitBytes = new LongAdder();
+    private final LongAdder missBytes = new LongAdder();
+
+    /**
+     * @param remote   远程访问器
+     * @param cacheDir 本地缓存目录
+     * @param maxBytes 本地缓存的最大字节数
+     */
+    public TieredFssAccessor(FssAccessor remote, String cacheDir, long maxBytes) {
+        this.remote = remote;
+        this.cacheDir = new File(cacheDir);
+        this.maxBytes = maxBytes;
+        if (!this.cacheDir.exists()) {
+            this.cacheDir.mkdirs();
+        }
+        Assert.isTrue(this.cacheDir.isDirectory() && this.cacheDir.canWrite(), "cacheDir must be a writable directory");
+        loadEntries();
+    }
+
+    /**
+     * 加载已有的缓存文件，按最后修改时间视为访问顺序
+     */
+    private void loadEntries() {
+        Path rootPath = this.cacheDir.toPath();
+        try (Stream<Path> stream = Files.walk(rootPath)) {
+            List<File> files = stream.filter(Files::isRegularFile).map(Path::toFile)
+                    .sorted(Comparator.comparingLong(File::lastModified)).collect(Collectors.toList());
+            synchronized (this.entries) {
+                for (File file : files) {
+                    if (file.getName().endsWith(".temp")) { // 上次未完成的获取
+                        file.delete();
+                    } else {
+                        String key = rootPath.relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+                        this.entries.put(key, file.length());
+                        this.totalBytes += file.length();
+                    }
+                }
+            }
+            evict();
+        } catch (IOException e) {
+            LogUtil.error(getClass(), e);
+        }
+    }
+
+    @Override
+    public void setMetrics(FssMetrics metrics) {
+        FssProvider provider = getProvider();
+        metrics.registerGauge(FssMetrics.LOCAL_CACHE_HITS, provider, this::getHitCount);
+        metrics.registerGauge(FssMetrics.LOCAL_CACHE_MISSES, provider, this::getMissCount);
+        metrics.registerGauge(FssMetrics.LOCAL_CACHE_HIT_BYTES, provider, this::getHitBytes);
+        metrics.registerGauge(FssMetrics.LOCAL_CACHE_MISS_BYTES, provider, this::getMissBytes);
+        metrics.registerGauge(FssMetrics.LOCAL_CACHE_CACHED_BYTES, provider, this::getCachedBytes);
+        if (this.remote instanceof FssMetricsAware) {
+            ((FssMetricsAware) this.remote).setMetrics(metrics);
+        }
+    }
+
+    @Override
+    public FssProvider getProvider() {
+        return this.remote.getProvider();
+    }
+
+    private String getKey(String path) {
+        String key = NetUtil.standardizeUrl(path);
+        return key.startsWith(Strings.SLASH) ? key.substring(1) : key;
+    }
+
+    @Override
+    public void write(InputStream in, String path, String filename) throws IOException {
+        this.remote.write(in, path, filename);
+        invalidate(getKey(path));
+    }
+
+    private void invalidate(String key) {
+        this.oversizedKeys.remove(key);
+        synchronized (this.entries) {
+            Long size = this.entries.remove(key);
+            if (size != null) {
+                this.totalBytes -= size;
+            }
+        }
+        new File(this.cacheDir, key).delete();
+    }
+
+    @Override
+    public String getOriginalFilename(String path) {
+        return this.remote.getOriginalFilename(path);
+    }
+
+    @Override
+    public Map<String, String> getOriginalFilenames(Collection<String> paths) {
+        return this.remote.getOriginalFilenames(paths);
+    }
+
+    @Override
+    public Long getLastModifiedTime(String path) {
+        // 缓存文件的最后修改时间即为获取时远程文件的最后修改时间
+        String key = getKey(path);
+        if (isCached(key)) {
+            return new File(this.cacheDir, key).lastModified();
+        }
+        return this.remote.getLastModifiedTime(path);
+    }
+
+    private boolean isCached(String key) {
+        synchronized (this.entries) {
+            return this.entries.get(key) != null; // 同时更新访问顺序
+        }
+    }
+
+    @Override
+    public boolean read(String path, OutputStream out) throws IOException {
+        String key = getKey(path);
+        File file = new File(this.cacheDir, key);
+        if (isCached(key) && copy(file, out, this.hitBytes)) {
+            this.hitCount.increment();
+            return true;
+        }
+        this.missCount.increment();
+        if (!this.oversizedKeys.contains(key)) {
+            if (!fetch(path, key)) { // 远程文件不存在
+                return false;
+            }
+            if (copy(file, out, this.missBytes)) {
+                return true;
+            }
+        }
+        // 文件过大未缓存，或缓存文件刚好被淘汰的，直接从远程读取
+        return this.remote.read(path, out);
+    }
+
+    @Override
+    public InputStream openStream(String path) throws IOException {
+        String key = getKey(path);
+        File file = new File(this.cacheDir, key);
+        if (isCached(key)) {
+            InputStream in = open(file, this.hitBytes);
+            if (in != null) {
+                this.hitCount.increment();
+                return in;
+            }
+        }
+        this.missCount.increment();
+        if (!this.oversizedKeys.contains(key)) {
+            if (!fetch(path, key)) { // 远程文件不存在
+                return null;
+            }
+            InputStream in = open(file, this.missBytes);
+            if (in != null) {
+                return in;
+            }
+        }
+        // 文件过大未缓存，或缓存文件刚好被淘汰的，直接从远程读取
+        return this.remote.openStream(path);
+    }
+
+    private InputStream open(File file, LongAdder bytes) {
+        try {
+            InputStream in = new FileInputStream(file);
+            bytes.add(file.length());
+            return in;
+        } catch (FileNotFoundException e) { // 缓存文件可能刚好被淘汰
+            return null;
+        }
+    }
+
+    private boolean copy(File file, OutputStream out, LongAdder bytes) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            bytes.add(IOUtils.copyLarge(in, out));
+            return true;
+        } catch (FileNotFoundException e) { // 缓存文件可能刚好被淘汰
+            return false;
+        }
+    }
+
+    private boolean fetch(String path, String key) throws IOException {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        CompletableFuture<Boolean> fetching = this.fetchings.putIfAbsent(key, future);
+        if (fetching != null) { // 已有其它线程在获取相同文件，则等待其结果
+            try {
+                return fetching.join();
+            } catch (CompletionException e) {
+                throw new IOException(e.getCause());
+            }
+        }
+        try {
+            boolean fetched = doFetch(path, key);
+            future.complete(fetched);
+            return fetched;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.fetchings.remove(key);
+        }
+    }
+
+    private boolean doFetch(String path, String key) throws IOException {
+        File file = new File(this.cacheDir, key);
+        file.getParentFile().mkdirs();
+        File tempFile = new File(file.getParentFile(),
+                file.getName() + Strings.UNDERLINE + StringUtil.uuid32() + Strings.DOT + "temp");
+        Long lastModifiedTime = this.remote.getLastModifiedTime(path);
+        boolean read;
+        try (OutputStream out = new FileOutputStream(tempFile)) {
+            read = this.remote.read(path, out);
+        }
+        if (!read) {
+            tempFile.delete();
+            return false;
+        }
+        if (lastModifiedTime != null) {
+            tempFile.setLastModified(lastModifiedTime);
+        }
+        long size = tempFile.length();
+        if (size > this.maxBytes) { // 不缓存超过缓存容量的文件，以免清空全部缓存后仍超出容量
+            tempFile.delete();
+            this.oversizedKeys.add(key);
+            return true;
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        synchronized (this.entries) {
+            Long replaced = this.entries.put(key, size);
+            this.totalBytes += size - (replaced == null ? 0 : replaced);
+        }
+        evict();
+        return true;
+    }
+
+    private void evict() {
+        List<String> evictedKeys = new ArrayList<>();
+        synchronized (this.entries) {
+            Iterator<Map.Entry<String, Long>> iterator = this.entries.entrySet().iterator();
+            while (this.totalBytes > this.maxBytes && iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                this.totalBytes -= entry.getValue();
+                evictedKeys.add(entry.getKey());
+                iterator.remove();
+            }
+        }
+        // 在锁外删除文件，正在读取的文件在Unix类系统中可继续读完
+        for (String key : evictedKeys) {
+            new File(this.cacheDir, key).delete();
+        }
+    }
+
+    @Override
+    public boolean readThumbnail(String path, Map<String, String> parameters, OutputStream out)
+            throws IOException {
+        return this.remote.readThumbnail(path, parameters, out);
+    }
+
+    @Override
+    public boolean isListSupported() {
+        return this.remote.isListSupported();
+    }
+
+    @Override
+    public boolean isDeleteSupported() {
+        return this.remote.isDeleteSupported();
+    }
+
+    @Override
+    public void list(String prefix, Consumer<String> consumer) throws IOException {
+        this.remote.list(prefix, consumer);
+    }
+
+    @Override
+    public void delete(Collection<String> paths) throws IOException {
+        this.remote.delete(paths);
+        for (String path : paths) {
+            invalidate(getKey(path));
+        }
+    }
+
+    @Override
+    public boolean copy(String sourcePath, String targetPath) throws IOException {
+        boolean copied = this.remote.copy(sourcePath, targetPath);
+        invalidate(getKey(targetPath));
+        return copied;
+    }
+
+    @Override
+    public boolean move(String sourcePath, String targetPath) throws IOException {
+        boolean moved = this.remote.move(sourcePath, targetPath);
+        invalidate(getKey(sourcePath));
+        invalidate(getKey(targetPath));
+        return moved;
+    }
+
+    @Override
+    public int purgeTemp(long expiredTime) throws IOException {
+        return this.remote.purgeTemp(expiredTime);
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    /**
+     * @return 从本地缓存读取的字节数
+     */
+    public long getHitBytes() {
+        return this.hitBytes.sum();
+    }
+
+    /**
+     * @return 从远程获取后读取的字节数
+     */
+    public long getMissBytes() {
+        return this.missBytes.sum();
+    }
+
+    public double getHitRatio() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public double getByteHitRatio() {
+        long hits = getHitBytes();
+        long total = hits + getMissBytes();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * @return 本地缓存当前占用的字节数
+     */
+    public long getCachedBytes() {
+        synchronized (this.entries) {
+            return this.totalBytes;
+        }
+    }
+
+}
@@ -0,0 +1,253 @@
+package org.truenewx.tnxjeex.fss.service.util;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.truenewx.tnxjee.core.util.LogUtil;
+
+/**
+ * 文件存储服务的限时缓存，线程安全。支持在过期前提前刷新，以及同一键的并发加载合并
+ *
+ * @param <K> 键类型
+ * @param <V> 值类型
+ * @author jianglei
+ */
+public class FssExpirableCache<K, V> {
+
+    /**
+     * 默认的提前刷新线程池，各缓存共用。刷新可能阻塞（如获取临时授权），故不使用公共线程池，以免影响并行流等其它任务
+     */
+    private static final Executor DEFAULT_REFRESH_EXECUTOR = createDefaultRefreshExecutor();
+
+    private final Map<K, Item<V>> items = new ConcurrentHashMap<>();
+    private final Map<K, CompletableFuture<V>> loadings = new ConcurrentHashMap<>();
+    private final int maxSize;
+    private Consumer<V> removalListener;
+    private Executor refreshExecutor = DEFAULT_REFRESH_EXECUTOR;
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * @param maxSize 最大缓存条目数，超过时先清理已过期的条目，仍超过时按过期时间从早到晚清理
+     */
+    public FssExpirableCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param removalListener 缓存值被移除时的监听器，可用于释放缓存值占用的资源
+     */
+    public void setRemovalListener(Consumer<V> removalListener) {
+        this.removalListener = removalListener;
+    }
+
+    /**
+     * @param refreshExecutor 提前刷新时执行加载的线程池，默认为各缓存共用的2个线程的线程池，队列已满时放弃刷新
+     */
+    public void setRefreshExecutor(Executor refreshExecutor) {
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * 获取指定键的缓存值
+     *
+     * @param key 键
+     * @return 缓存值，不存在或已过期时返回null
+     */
+    public V get(K key) {
+        Item<V> item = this.items.get(key);
+        if (item != null) {
+            if (!item.isExpired(System.currentTimeMillis())) {
+                this.hitCount.increment();
+                return item.value;
+            }
+            remove(key, item);
+        }
+        this.missCount.increment();
+        return null;
+    }
+
+    /**
+     * 获取指定键的缓存值，不存在或已过期时加载并缓存。进入提前刷新时限后，由首个获取者触发在线程池中异步重新加载，
+     * 所有获取者继续使用原值，刷新失败时原值在过期前仍然有效
+     *
+     * @param key                键
+     * @param loader             加载器，返回null表示无法加载，此时不缓存
+     * @param expiredMillis      缓存值的有效毫秒数
+     * @param refreshAheadMillis 在过期前多少毫秒开始提前刷新
+     * @return 缓存值
+     */
+    public V get(K key, Supplier<V> loader, long expiredMillis, long refreshAheadMillis) {
+        long now = System.currentTimeMillis();
+        Item<V> item = this.items.get(key);
+        if (item != null && !item.isExpired(now)) {
+            this.hitCount.increment();
+            if (now >= item.expiredTime - refreshAheadMillis && item.refreshing.compareAndSet(false, true)) {
+                refresh(key, item, loader, expiredMillis);
+            }
+            return item.value;
+        }
+        this.missCount.increment();
+        CompletableFuture<V> loading = new CompletableFuture<>();
+        CompletableFuture<V> existingLoading = this.loadings.putIfAbsent(key, loading);
+        if (existingLoading != null) { // 已有其它线程在加载，等待其加载结果
+            try {
+                return existingLoading.join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof RuntimeException ? (RuntimeException) cause : e;
+            }
+        }
+        try {
+            // 登记加载后再次检查，以免此前的加载刚刚完成并移除登记，导致重复加载
+            item = this.items.get(key);
+            V value;
+            if (item != null && !item.isExpired(System.currentTimeMillis())) {
+                value = item.value;
+            } else {
+                value = loader.get();
+                if (value != null) {
+                    put(key, value, expiredMillis);
+                }
+            }
+            loading.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.loadings.remove(key, loading);
+        }
+    }
+
+    private void refresh(K key, Item<V> item, Supplier<V> loader, long expiredMillis) {
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    V value = loader.get();
+                    if (value != null) {
+                        put(key, value, expiredMillis);
+                    }
+                } catch (RuntimeException e) {
+                    LogUtil.error(getClass(), e);
+                } finally {
+                    item.refreshing.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) { // 线程池已满时放弃本次刷新，稍后再次触发
+            item.refreshing.set(false);
+        }
+    }
+
+    public void put(K key, V value, long expiredMillis) {
+        if (expiredMillis > 0) {
+            Item<V> replaced = this.items.put(key, new Item<>(value, System.currentTimeMillis() + expiredMillis));
+            if (replaced != null && replaced.value != value) {
+                onRemoved(replaced.value);
+            }
+            if (this.items.size() > this.maxSize) {
+                evict();
+            }
+        }
+    }
+
+    public void remove(K key) {
+        Item<V> item = this.items.remove(key);
+        if (item != null) {
+            onRemoved(item.value);
+        }
+    }
+
+    public void clear() {
+        this.items.forEach(this::remove);
+    }
+
+    private void remove(K key, Item<V> item) {
+        if (this.items.remove(key, item)) {
+            onRemoved(item.value);
+        }
+    }
+
+    private synchronized void evict() {
+        if (this.items.size() <= this.maxSize) { // 等待期间已被其它线程清理
+            return;
+        }
+        long now = System.currentTimeMillis();
+        this.items.forEach((key, item) -> {
+            if (item.isExpired(now)) {
+                remove(key, item);
+            }
+        });
+        // 清理过期条目后仍然超限，则按过期时间从早到晚移除，直至最大条目数的90%，以免每次加入均需排序
+        int targetSize = this.maxSize - this.maxSize / 10;
+        if (this.items.size() > targetSize) {
+            List<Map.Entry<K, Item<V>>> entries = new ArrayList<>(this.items.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> entry.getValue().expiredTime));
+            for (int i = 0; i < entries.size() && this.items.size() > targetSize; i++) {
+                Map.Entry<K, Item<V>> entry = entries.get(i);
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private void onRemoved(V value) {
+        if (this.removalListener != null) {
+            this.removalListener.accept(value);
+        }
+    }
+
+    public int size() {
+        return this.items.size();
+    }
+
+    public long getHitCount() {
+        return this.hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return this.missCount.sum();
+    }
+
+    private static Executor createDefaultRefreshExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(100), runnable -> {
+            Thread thread = new Thread(runnable, "fss-cache-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static class Item<V> {
+
+        private final V value;
+        private final long expiredTime;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Item(V value, long expiredTime) {
+            this.value = value;
+            this.expiredTime = expiredTime;
+        }
+
+        boolean isExpired(long now) {
+            return now >= this.expiredTime;
+        }
+
+    }
+
+}
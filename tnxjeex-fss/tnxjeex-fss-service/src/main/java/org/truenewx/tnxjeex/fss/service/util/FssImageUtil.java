@@ -0,0 +1,143 @@
+package org.truenewx.tnxjeex.fss.service.util;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+
+import org.w3c.dom.NodeList;
+
+/**
+ * 文件存储服务的图片工具类
+ *
+ * @author jianglei
+ */
+public class FssImageUtil {
+
+    /**
+     * 默认的解码图片最大像素数，约为4000万像素，解码后约占用160MB内存
+     */
+    public static final long DEFAULT_MAX_PIXELS = 40_000_000L;
+
+    private static final String JPEG_METADATA_FORMAT = "javax_imageio_jpeg_image_1.0";
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final int NORMAL_ORIENTATION = 1;
+
+    private FssImageUtil() {
+    }
+
+    /**
+     * 读取图片，先读取图片尺寸，像素数超过限定时不解码，以免解压缩炸弹等超大图片耗尽内存
+     *
+     * @param in        图片输入流
+     * @param maxPixels 最大像素数，小于等于0时不限定
+     * @return 图片，不是可识别的图片或像素数超过限定时返回null
+     * @throws IOException 如果读取过程中出现错误
+     */
+    public static BufferedImage read(InputStream in, long maxPixels) throws IOException {
+        return read(in, maxPixels, false);
+    }
+
+    /**
+     * 读取图片，先读取图片尺寸，像素数超过限定时不解码，以免解压缩炸弹等超大图片耗尽内存
+     *
+     * @param in                        图片输入流
+     * @param maxPixels                 最大像素数，小于等于0时不限定
+     * @param normalOrientationRequired 是否要求图片为正常方向，为true时EXIF方向不为正常方向或无法确定方向的图片返回null
+     * @return 图片，不是可识别的图片、像素数超过限定或方向不满足要求时返回null
+     * @throws IOException 如果读取过程中出现错误
+     */
+    public static BufferedImage read(InputStream in, long maxPixels, boolean normalOrientationRequired)
+            throws IOException {
+        try (ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+            if (imageIn == null) {
+                return null;
+            }
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageIn);
+            if (!readers.hasNext()) {
+                return null;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageIn, true, true);
+                if (maxPixels > 0 && (long) reader.getWidth(0) * reader.getHeight(0) > maxPixels) {
+                    return null;
+                }
+                if (normalOrientationRequired && getExifOrientation(reader) != NORMAL_ORIENTATION) {
+                    return null;
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * 获取JPEG图片的EXIF方向，其它格式视为正常方向
+     *
+     * @return EXIF方向，1表示正常方向，无法读取元数据时返回0
+     */
+    private static int getExifOrientation(ImageReader reader) {
+        IIOMetadata metadata;
+        try {
+            metadata = reader.getImageMetadata(0);
+        } catch (IOException | RuntimeException e) { // 元数据损坏
+            return 0;
+        }
+        if (metadata == null || !JPEG_METADATA_FORMAT.equals(metadata.getNativeMetadataFormatName())) {
+            return NORMAL_ORIENTATION;
+        }
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(JPEG_METADATA_FORMAT);
+        // EXIF位于APP1段中，JPEG元数据中以未知标记保存其原始内容
+        NodeList markers = root.getElementsByTagName("unknown");
+        for (int i = 0; i < markers.getLength(); i++) {
+            IIOMetadataNode marker = (IIOMetadataNode) markers.item(i);
+            Object data = marker.getUserObject();
+            if ("225".equals(marker.getAttribute("MarkerTag")) && data instanceof byte[]) {
+                int orientation = parseExifOrientation((byte[]) data);
+                if (orientation > 0) {
+                    return orientation;
+                }
+            }
+        }
+        return NORMAL_ORIENTATION;
+    }
+
+    /**
+     * 从APP1段内容中解析EXIF方向，APP1段内容形如：Exif\0\0 + TIFF头 + IFD0
+     *
+     * @return EXIF方向，不是EXIF内容或其中没有方向时返回0
+     */
+    private static int parseExifOrientation(byte[] data) {
+        if (data.length < 14 || data[0] != 'E' || data[1] != 'x' || data[2] != 'i' || data[3] != 'f') {
+            return 0;
+        }
+        ByteBuffer tiff = ByteBuffer.wrap(data, 6, data.length - 6).slice();
+        tiff.order(tiff.get(0) == 'I' ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+        int ifdOffset = tiff.getInt(4);
+        if (ifdOffset < 8 || ifdOffset + 2 > tiff.limit()) {
+            return 0;
+        }
+        int count = tiff.getShort(ifdOffset) & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            int entryOffset = ifdOffset + 2 + i * 12; // 每个条目12字节：标签2、类型2、数量4、值4
+            if (entryOffset + 12 > tiff.limit()) {
+                break;
+            }
+            if ((tiff.getShort(entryOffset) & 0xFFFF) == EXIF_ORIENTATION_TAG) {
+                return tiff.getShort(entryOffset + 8) & 0xFFFF;
+            }
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,59 @@
+package org.truenewx.tnxjeex.fss.service.util;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.truenewx.tnxjeex.fss.service.FssDigester;
+
+/**
+ * 基于JDK消息摘要算法的文件内容摘要计算器
+ *
+ * @author jianglei
+ */
+public class FssMessageDigester implements FssDigester {
+
+    private final String algorithm;
+
+    /**
+     * @param algorithm JDK支持的消息摘要算法名称，如：MD5、SHA-256
+     */
+    public FssMessageDigester(String algorithm) {
+        this.algorithm = algorithm;
+        newMessageDigest(); // 尽早校验算法是否被支持
+    }
+
+    private MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(this.algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    @Override
+    public Digest newDigest() {
+        MessageDigest messageDigest = newMessageDigest();
+        return new Digest() {
+            @Override
+            public void update(byte[] bytes, int offset, int length) {
+                messageDigest.update(bytes, offset, length);
+            }
+
+            @Override
+            public String getHex() {
+                byte[] bytes;
+                try { // 计算副本的摘要，以免重置已更新的内容
+                    bytes = ((MessageDigest) messageDigest.clone()).digest();
+                } catch (CloneNotSupportedException e) {
+                    throw new IllegalStateException(e);
+                }
+                StringBuilder hex = new StringBuilder(bytes.length * 2);
+                for (byte b : bytes) {
+                    hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+                }
+                return hex.toString();
+            }
+        };
+    }
+
+}
@@ -2,27 +2,40 @@ package org.truenewx.tnxjeex.fss.web.controller;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.context.request.async.AsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 import org.truenewx.tnxjee.core.Strings;
@@ -31,8 +44,6 @@ import org.truenewx.tnxjee.core.config.AppConstants;
 import org.truenewx.tnxjee.core.config.CommonProperties;
 import org.truenewx.tnxjee.core.util.EncryptUtil;
 import org.truenewx.tnxjee.core.util.LogUtil;
-import org.truenewx.tnxjee.core.util.NetUtil;
-import org.truenewx.tnxjee.core.util.StringUtil;
 import org.truenewx.tnxjee.model.spec.user.UserIdentity;
 import org.truenewx.tnxjee.service.exception.BusinessException;
 import org.truenewx.tnxjee.service.spec.upload.FileUploadLimit;
@@ -46,6 +57,7 @@ import org.truenewx.tnxjeex.fss.api.FssMetaResolver;
 import org.truenewx.tnxjeex.fss.api.FssUploader;
 import org.truenewx.tnxjeex.fss.api.model.FssTransferCommand;
 import org.truenewx.tnxjeex.fss.model.FssFileMeta;
+import org.truenewx.tnxjeex.fss.model.FssUploadPolicy;
 import org.truenewx.tnxjeex.fss.service.FssExceptionCodes;
 import org.truenewx.tnxjeex.fss.service.FssServiceTemplate;
 import org.truenewx.tnxjeex.fss.web.model.FssUploadedFileMeta;
@@ -59,6 +71,8 @@ import com.aliyun.oss.internal.Mimetypes;
  */
 public abstract class FssControllerTemplate<I extends UserIdentity<?>> implements FssMetaResolver, FssUploader {
 
+    private static final String GZIP_ENCODING = "gzip";
+
     @Value(AppConstants.EL_SPRING_APP_NAME)
     private String appName;
     @Autowired
@@ -69,6 +83,7 @@ public abstract class FssControllerTemplate<I extends UserIdentity<?>> implement
     private Executor executor;
 
     protected String downloadUrlPrefix;
+    private volatile Semaphore transferPermits;
 
     /**
      * 获取指定用户上传指定业务类型的文件上传限制条件
@@ -130,7 +145,11 @@ public abstract class FssControllerTemplate<I extends UserIdentity<?>> implement
         I userIdentity = getUserIdentity();
         String storageUrl = this.service.write(type, scope, userIdentity, fileSize, filename, in);
         in.close();
+        return buildUploadedFileMeta(userIdentity, storageUrl, fileId, filename, onlyStorage);
+    }
 
+    private FssUploadedFileMeta buildUploadedFileMeta(I userIdentity, String storageUrl, String fileId,
+            String filename, boolean onlyStorage) {
         if (StringUtils.isBlank(fileId)) { // 如果文件id未指定，则根据存储路径加密得到文件id
             fileId = EncryptUtil.encryptByMd5(storageUrl);
         }
@@ -149,6 +168,125 @@ public abstract class FssControllerTemplate<I extends UserIdentity<?>> implement
         return result;
     }
 
+    /**
+     * 开始分片上传，之后可乱序、并发地上传各分片，全部分片上传后调用完成分片上传接口
+     *
+     * @param type      业务类型
+     * @param scope     业务范围
+     * @param filename  文件名
+     * @param fileSize  文件大小
+     * @param chunkSize 分片大小，除最后一个分片外，每个分片的大小均须与此相同
+     * @return 上传任务id
+     * @throws IOException 如果创建上传任务出现错误
+     */
+    @PostMapping("/upload-chunked/{type}")
+    @ResponseBody
+    @ConfigAuthority // 登录用户才可上传文件，访问策略可能还有更多限定
+    public String initChunkedUpload(@PathVariable("type") String type,
+            @RequestParam(value = "scope", required = false) String scope, @RequestParam("filename") String filename,
+            @RequestParam("fileSize") long fileSize, @RequestParam("chunkSize") int chunkSize) throws IOException {
+        return this.service.initChunkedUpload(type, scope, getUserIdentity(), fileSize, filename, chunkSize);
+    }
+
+    /**
+     * 上传一个分片，请求体即为分片内容，以免容器缓存整个表单
+     *
+     * @param uploadId 上传任务id
+     * @param index    分片索引，从0开始
+     * @param request  请求
+     * @throws IOException 如果写的过程中出现错误
+     */
+    @PutMapping("/upload-chunked/chunk/{uploadId}/{index}")
+    @ResponseBody
+    @ConfigAuthority // 登录用户才可上传文件，访问策略可能还有更多限定
+    public void writeChunk(@PathVariable("uploadId") String uploadId, @PathVariable("index") int index,
+            HttpServletRequest request) throws IOException {
+        try (InputStream in = request.getInputStream()) {
+            this.service.writeChunk(getUserIdentity(), uploadId, index, in);
+        }
+    }
+
+    /**
+     * 获取已接收的分片索引集，以便断线后只续传缺少的分片
+     *
+     * @param uploadId 上传任务id
+     * @return 已接收的分片索引集
+     */
+    @GetMapping("/upload-chunked/chunks/{uploadId}")
+    @ResponseBody
+    @ConfigAuthority // 登录用户才可上传文件，访问策略可能还有更多限定
+    public int[] getReceivedChunks(@PathVariable("uploadId") String uploadId) {
+        return this.service.getReceivedChunks(getUserIdentity(), uploadId);
+    }
+
+    /**
+     * 完成分片上传
+     *
+     * @param uploadId    上传任务id
+     * @param fileId      文件id
+     * @param onlyStorage 是否只需要存储地址
+     * @return 已上传的文件元数据
+     * @throws IOException 如果写的过程中出现错误
+     */
+    @PostMapping("/upload-chunked/complete/{uploadId}")
+    @ResponseBody
+    @ConfigAuthority // 登录用户才可上传文件，访问策略可能还有更多限定
+    public FssUploadedFileMeta completeChunkedUpload(@PathVariable("uploadId") String uploadId,
+            @RequestParam(value = "fileId", required = false) String fileId,
+            @RequestParam(value = "onlyStorage", required = false) boolean onlyStorage) throws IOException {
+        I userIdentity = getUserIdentity();
+        String storageUrl = this.service.completeChunkedUpload(userIdentity, uploadId);
+        FssFileMeta meta = onlyStorage ? null : this.service.getMeta(userIdentity, storageUrl);
+        String filename = meta == null ? null : meta.getName();
+        return buildUploadedFileMeta(userIdentity, storageUrl, fileId, filename, onlyStorage);
+    }
+
+    /**
+     * 获取直传策略，客户端据此直接上传文件到存储服务提供商，上传后需调用完成直传接口
+     *
+     * @param type     业务类型
+     * @param scope    业务范围
+     * @param filename 文件名
+     * @param fileSize 文件大小
+     * @return 直传策略，为null时表示不支持直传，此时应调用上传接口
+     */
+    @GetMapping("/upload-policy/{type}")
+    @ResponseBody
+    @ConfigAuthority // 登录用户才可上传文件，访问策略可能还有更多限定
+    public FssUploadPolicy getUploadPolicy(@PathVariable("type") String type,
+            @RequestParam(value = "scope", required = false) String scope, @RequestParam("filename") String filename,
+            @RequestParam("fileSize") long fileSize) {
+        return this.service.getUploadPolicy(type, scope, getUserIdentity(), fileSize, filename);
+    }
+
+    /**
+     * 完成直传
+     *
+     * @param type        业务类型
+     * @param scope       业务范围
+     * @param storageUrl  直传策略中的存储URL
+     * @param filename    文件名
+     * @param fileId      文件id
+     * @param onlyStorage 是否只需要存储地址
+     * @return 已上传的文件元数据，文件尚未上传完成时返回null
+     */
+    @PostMapping("/upload-complete/{type}")
+    @ResponseBody
+    @ConfigAuthority // 登录用户才可上传文件，访问策略可能还有更多限定
+    public FssUploadedFileMeta completeUpload(@PathVariable("type") String type,
+            @RequestParam(value = "scope", required = false) String scope,
+            @RequestParam("storageUrl") String storageUrl,
+            @RequestParam(value = "filename", required = false) String filename,
+            @RequestParam(value = "fileId", required = false) String fileId,
+            @RequestParam(value = "onlyStorage", required = false) boolean onlyStorage) {
+        I userIdentity = getUserIdentity();
+        storageUrl = this.service.completeUpload(type, scope, userIdentity, storageUrl);
+        if (storageUrl == null) {
+            return null;
+        }
+        return buildUploadedFileMeta(userIdentity, storageUrl, fileId, filename, onlyStorage);
+    }
+
     @Override
     @ResponseBody
     @ConfigAnonymous // 匿名用户即可获取，具体权限由访问策略决定
@@ -160,6 +298,17 @@ public abstract class FssControllerTemplate<I extends UserIdentity<?>> implement
         return null;
     }
 
+    @Override
+    @ResponseBody
+    @ConfigAnonymous // 匿名用户即可获取，具体权限由访问策略决定
+    public String[] resolveReadUrls(String[] storageUrls, boolean thumbnail) {
+        String[] readUrls = this.service.getReadUrls(getUserIdentity(), storageUrls, thumbnail);
+        for (int i = 0; i < readUrls.length; i++) {
+            readUrls[i] = getFullReadUrl(readUrls[i]);
+        }
+        return readUrls;
+    }
+
     private String getFullReadUrl(String readUrl) {
         // 读取地址以/开头但不以//开头，则视为相对地址，相对地址需考虑添加下载路径前缀、上下文根和主机地址
         if (readUrl != null && readUrl.startsWith(Strings.SLASH) && !readUrl.startsWith("//")) {
@@ -190,28 +339,152 @@ public abstract class FssControllerTemplate<I extends UserIdentity<?>> implement
     @ResponseBody
     @ConfigAuthority // 登录用户才可转储资源，访问策略可能还有更多限定
     public String transfer(FssTransferCommand command) {
+        return transfer(getUserIdentity(), command);
+    }
+
+    @Override
+    @ResponseBody
+    @ConfigAuthority // 登录用户才可转储资源，访问策略可能还有更多限定
+    public String[] transferAll(FssTransferCommand[] commands) {
+        int maxBatchSize = getTransferBatchMaxSize();
+        if (commands.length > maxBatchSize) {
+            throw new BusinessException(FssExceptionCodes.TOO_MANY_TRANSFERS, maxBatchSize);
+        }
+        // 在请求线程中获取用户标识，以便在其它线程中使用
+        I userIdentity = getUserIdentity();
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (FssTransferCommand command : commands) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return transfer(userIdentity, command);
+                } catch (RuntimeException e) { // 单个转储失败不影响其它转储
+                    LogUtil.error(getClass(), e);
+                    return command.getUrl();
+                }
+            }, this.executor));
+        }
+        String[] storageUrls = new String[commands.length];
+        for (int i = 0; i < storageUrls.length; i++) {
+            storageUrls[i] = futures.get(i).join();
+        }
+        return storageUrls;
+    }
+
+    private String transfer(I userIdentity, FssTransferCommand command) {
         String type = command.getType();
         String url = command.getUrl();
         if (StringUtils.isNotBlank(type) && url != null && (url.startsWith("http://") || url.startsWith("https://"))) {
             try {
                 String filename = getFilename(url, command.getExtension());
-                File root = new ClassPathResource(".").getFile().getParentFile().getParentFile().getParentFile()
-                        .getParentFile();
-                String fileId = StringUtil.uuid32();
-                File file = new File(root, "/temp/" + fileId + Strings.UNDERLINE + filename);
-                NetUtil.download(url, null, file);
-                FssUploadedFileMeta meta = write(type, command.getScope(), fileId, file.length(), filename,
-                        new FileInputStream(file), true);
-                // 在独立线程中删除临时文件，以免影响正常流程
-                this.executor.execute(file::delete);
-                return meta.getStorageUrl();
+                // 限制同时进行的转储数量，以免过多占用内存和连接
+                Semaphore permits = getTransferPermits();
+                permits.acquire();
+                try {
+                    return transfer(userIdentity, type, command.getScope(), url, filename);
+                } finally {
+                    permits.release();
+                }
             } catch (IOException e) {
                 LogUtil.error(getClass(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
             }
         }
         return command.getUrl(); // url变量可能已被改变，此处需返回原始URL
     }
 
+    private Semaphore getTransferPermits() {
+        if (this.transferPermits == null) {
+            synchronized (this) {
+                if (this.transferPermits == null) {
+                    this.transferPermits = new Semaphore(getTransferConcurrency());
+                }
+            }
+        }
+        return this.transferPermits;
+    }
+
+    /**
+     * 转储指定URL的资源。声明了大小的资源直接将响应内容流式写入存储，不经过磁盘，也不在内存中整体缓存；
+     * 未声明大小的资源须先暂存到临时文件以获知大小，供上传限制校验
+     */
+    private String transfer(I userIdentity, String type, String scope, String url, String filename)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(getTransferConnectTimeout());
+        connection.setReadTimeout(getTransferReadTimeout());
+        try {
+            int responseCode = connection.getResponseCode();
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                throw new IOException("Response code " + responseCode + " from " + url);
+            }
+            long maxSize = getTransferMaxSize();
+            long contentLength = connection.getContentLengthLong();
+            if (contentLength > maxSize) { // 已知大小超限的，无需读取内容
+                throw new IOException("Content length " + contentLength + " exceeds " + maxSize + " from " + url);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                if (contentLength >= 0) {
+                    // 实际内容超过声明的大小时中止，以免绕过上传限制
+                    return this.service.write(type, scope, userIdentity, contentLength, filename,
+                            new SizeLimitedInputStream(in, contentLength, url));
+                }
+                File tempFile = File.createTempFile("fss-transfer-", ".temp");
+                try {
+                    try (OutputStream out = new FileOutputStream(tempFile)) {
+                        // 多读取一个字节，以判断未声明大小的内容是否超限
+                        long size = IOUtils.copyLarge(in, out, 0, maxSize + 1);
+                        if (size > maxSize) {
+                            throw new IOException("Content exceeds " + maxSize + " from " + url);
+                        }
+                    }
+                    try (InputStream fileIn = new FileInputStream(tempFile)) {
+                        return this.service.write(type, scope, userIdentity, tempFile.length(), filename, fileIn);
+                    }
+                } finally {
+                    tempFile.delete();
+                }
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * @return 转储外部资源时允许的最大字节数
+     */
+    protected long getTransferMaxSize() {
+        return 100 * 1024 * 1024;
+    }
+
+    /**
+     * @return 转储外部资源时的连接超时毫秒数
+     */
+    protected int getTransferConnectTimeout() {
+        return 10 * 1000;
+    }
+
+    /**
+     * @return 转储外部资源时的读取超时毫秒数
+     */
+    protected int getTransferReadTimeout() {
+        return 60 * 1000;
+    }
+
+    /**
+     * @return 一次批量转储允许的最大资源数量
+     */
+    protected int getTransferBatchMaxSize() {
+        return 100;
+    }
+
+    /**
+     * @return 允许同时进行的转储数量
+     */
+    protected int getTransferConcurrency() {
+        return 8;
+    }
+
     private String getFilename(String url, String extension) {
         String filename = url;
         int index = url.lastIndexOf(Strings.SLASH);
@@ -270,9 +543,12 @@ public abstract class FssControllerTemplate<I extends UserIdentity<?>> implement
     @ResponseBody
     @ConfigAnonymous // 匿名用户即可获取，具体权限由访问策略决定
     public FssFileMeta[] resolveMetas(String[] storageUrls) {
-        FssFileMeta[] metas = new FssFileMeta[storageUrls.length];
-        for (int i = 0; i < storageUrls.length; i++) {
-            metas[i] = resolveMeta(storageUrls[i]);
+        FssFileMeta[] metas = this.service.getMetas(getUserIdentity(), storageUrls);
+        for (FssFileMeta meta : metas) {
+            if (meta != null) {
+                meta.setReadUrl(getFullReadUrl(meta.getReadUrl()));
+                meta.setThumbnailReadUrl(getFullReadUrl(meta.getThumbnailReadUrl()));
+            }
         }
         return metas;
     }
@@ -286,23 +562,125 @@ public abstract class FssControllerTemplate<I extends UserIdentity<?>> implement
         long modifiedTime = this.service.getLastModifiedTime(userIdentity, path);
         response.setDateHeader(HttpHeaders.LAST_MODIFIED, modifiedTime);
         response.setContentType(Mimetypes.getInstance().getMimetype(path));
+        boolean thumbnail = Boolean.parseBoolean(request.getParameter(FssServiceTemplate.THUMBNAIL_PARAMETER));
+        boolean gzipStored = !thumbnail && this.service.isEncodedStorage(path, GZIP_ENCODING);
+        // 压缩存储的文件的响应随客户端接受的内容编码而不同，须指明以免缓存将压缩内容提供给不支持的客户端，未修改的响应也不例外
+        if (gzipStored) {
+            response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
         long modifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
         if (modifiedSince == modifiedTime) {
             response.setStatus(HttpServletResponse.SC_NOT_MODIFIED); // 如果相等则返回表示未修改的状态码
         } else {
-            ServletOutputStream out = response.getOutputStream();
-            this.service.read(userIdentity, path, out);
-            out.close();
+            boolean gzipAccepted = gzipStored && isGzipAccepted(request);
+            if (isAsyncDownload() && request.isAsyncSupported()) {
+                downloadAsync(request, response, userIdentity, path, thumbnail, gzipAccepted);
+            } else {
+                InputStream in = gzipAccepted ? openGzipStream(response, userIdentity, path) : null;
+                ServletOutputStream out = response.getOutputStream();
+                if (in != null) {
+                    try {
+                        IOUtils.copy(in, out);
+                    } finally {
+                        in.close();
+                    }
+                } else {
+                    this.service.read(userIdentity, path, thumbnail, out);
+                }
+                out.close();
+            }
         }
         return null;
     }
 
+    /**
+     * 异步下载，读取权限已在请求线程中校验。打开输入流及读取内容可能需要访问远程存储，在线程池中进行，
+     * 写出由异步写监听器在输出流可写时进行，下载期间不占用容器线程。
+     * 经由Spring的异步请求管理器开始异步处理，以使DispatcherServlet及过滤器知晓请求已转为异步处理，
+     * 处理方法返回后不再处理响应；结束时直接完成异步上下文，不再分派回容器
+     */
+    private void downloadAsync(HttpServletRequest request, HttpServletResponse response, I userIdentity,
+            String path, boolean thumbnail, boolean gzipAccepted) {
+        AsyncWebRequest asyncWebRequest = WebAsyncUtils.createAsyncWebRequest(request, response);
+        asyncWebRequest.setTimeout(getAsyncDownloadTimeout());
+        WebAsyncUtils.getAsyncManager(request).setAsyncWebRequest(asyncWebRequest);
+        asyncWebRequest.startAsync();
+        AsyncContext asyncContext = request.getAsyncContext();
+        FssDownloadWriteListener listener = new FssDownloadWriteListener(asyncContext, this.executor);
+        asyncWebRequest.addTimeoutHandler(listener::onTimeout);
+        CompletableFuture.runAsync(() -> {
+            try {
+                InputStream in = gzipAccepted ? openGzipStream(response, userIdentity, path) : null;
+                if (in == null) {
+                    in = this.service.openStream(userIdentity, path, thumbnail);
+                }
+                if (in == null) {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    asyncContext.complete();
+                } else {
+                    listener.start(in, response.getOutputStream());
+                }
+            } catch (Exception e) {
+                LogUtil.error(getClass(), e);
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                asyncContext.complete();
+            }
+        }, this.executor);
+    }
+
+    /**
+     * 判断客户端是否接受gzip内容编码
+     */
+    private boolean isGzipAccepted(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptEncoding != null) {
+            for (String encoding : acceptEncoding.split(Strings.COMMA)) {
+                // 形如：gzip;q=0.8，q=0表示不接受
+                String[] parts = encoding.split(";");
+                if (GZIP_ENCODING.equalsIgnoreCase(parts[0].trim())) {
+                    return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 打开压缩存储的文件的gzip压缩内容，以便不经解压直接输出，同时设置内容编码响应头
+     *
+     * @return 输入流，文件未以gzip压缩存储时返回null
+     */
+    private InputStream openGzipStream(HttpServletResponse response, I userIdentity, String path)
+            throws IOException {
+        InputStream in = this.service.openEncodedStream(userIdentity, path, GZIP_ENCODING);
+        if (in != null) {
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP_ENCODING);
+        }
+        return in;
+    }
+
+    /**
+     * @return 是否以Servlet异步I/O方式下载文件，以免大文件或缓慢的客户端长时间占用容器线程，默认为否
+     */
+    protected boolean isAsyncDownload() {
+        return false;
+    }
+
+    /**
+     * @return 异步下载的超时毫秒数
+     */
+    protected long getAsyncDownloadTimeout() {
+        return 30 * 60 * 1000;
+    }
+
     protected String getDownloadPath(HttpServletRequest request) {
         String url = WebUtil.getRelativeRequestUrl(request);
         url = URLDecoder.decode(url, StandardCharsets.UTF_8);
         String downloadUrlPrefix = getDownloadUrlPrefix();
         int index = url.indexOf(downloadUrlPrefix + Strings.SLASH);
-        return url.substring(index + downloadUrlPrefix.length()); // 通配符部分
+        url = url.substring(index + downloadUrlPrefix.length()); // 通配符部分
+        index = url.indexOf(Strings.QUESTION);
+        return index >= 0 ? url.substring(0, index) : url; // 去掉可能的请求参数
     }
 
     protected I getUserIdentity() {
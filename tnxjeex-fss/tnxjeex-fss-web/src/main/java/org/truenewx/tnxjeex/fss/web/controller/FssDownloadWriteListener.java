@@ -0,0 +1,143 @@
+package org.truenewx.tnxjeex.fss.web.controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+
+import org.truenewx.tnxjee.core.util.LogUtil;
+
+/**
+ * 文件下载的异步写监听器。读取可能阻塞（如远程存储），在线程池中进行；写出仅在输出流可写时进行，
+ * 客户端接收缓慢或存储读取缓慢时均不占用容器线程。读取与写出交替进行，同一时刻至多有一个线程访问输入流和输出流
+ *
+ * @author jianglei
+ */
+class FssDownloadWriteListener implements WriteListener {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final AsyncContext asyncContext;
+    private final Executor executor;
+    private InputStream in;
+    private ServletOutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    // 缓冲区中待写出的字节数，为-1表示已读完
+    private int length;
+    private boolean reading;
+    private boolean completed;
+
+    FssDownloadWriteListener(AsyncContext asyncContext, Executor executor) {
+        this.asyncContext = asyncContext;
+        this.executor = executor;
+    }
+
+    /**
+     * 开始下载
+     *
+     * @param in  输入流
+     * @param out 输出流
+     */
+    public synchronized void start(InputStream in, ServletOutputStream out) throws IOException {
+        if (this.completed) { // 打开输入流期间已超时
+            in.close();
+            return;
+        }
+        this.in = in;
+        this.out = out;
+        this.reading = true; // 在设置监听器前标记为读取中，以免容器回调时写出空缓冲区
+        out.setWriteListener(this);
+        readAsync();
+    }
+
+    private void readAsync() {
+        this.reading = true;
+        try {
+            this.executor.execute(() -> {
+                int count;
+                try {
+                    count = this.in.read(this.buffer);
+                } catch (IOException | RuntimeException e) {
+                    onError(e);
+                    return;
+                }
+                synchronized (this) {
+                    this.length = count;
+                    this.reading = false;
+                    try {
+                        write();
+                    } catch (IOException | RuntimeException e) {
+                        onError(e);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            onError(e);
+        }
+    }
+
+    @Override
+    public synchronized void onWritePossible() throws IOException {
+        write();
+    }
+
+    /**
+     * 写出已读取的内容并继续读取，输出流不可写时返回，待可写时容器会调用{@link #onWritePossible()}
+     */
+    private void write() throws IOException {
+        if (this.reading || this.completed || !this.out.isReady()) {
+            return;
+        }
+        if (this.length < 0) {
+            complete();
+            return;
+        }
+        // 非阻塞模式下，无法立即写出的内容由容器缓冲，写出后缓冲区即可复用
+        this.out.write(this.buffer, 0, this.length);
+        readAsync();
+    }
+
+    @Override
+    public synchronized void onError(Throwable t) {
+        if (this.completed) { // 超时结束后关闭输入流导致的读取错误
+            return;
+        }
+        // 客户端中断下载较为常见，无需记录
+        if (!(t instanceof IOException)) {
+            LogUtil.error(getClass(), t);
+        }
+        HttpServletResponse response = (HttpServletResponse) this.asyncContext.getResponse();
+        if (!response.isCommitted()) {
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+        complete();
+    }
+
+    /**
+     * 异步处理超时时结束下载
+     */
+    public void onTimeout() {
+        complete();
+    }
+
+    private synchronized void complete() {
+        if (this.completed) {
+            return;
+        }
+        this.completed = true;
+        if (this.in != null) {
+            try {
+                this.in.close();
+            } catch (IOException e) {
+                LogUtil.error(getClass(), e);
+            }
+        }
+        this.asyncContext.complete();
+    }
+
+}
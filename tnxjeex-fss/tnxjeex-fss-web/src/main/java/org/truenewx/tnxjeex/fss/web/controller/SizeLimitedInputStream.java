@@ -0,0 +1,66 @@
+package org.truenewx.tnxjeex.fss.web.controller;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 限定大小的输入流，读取的内容超过限定大小时抛出异常，而不是截断
+ *
+ * @author jianglei
+ */
+class SizeLimitedInputStream extends FilterInputStream {
+
+    private final long maxSize;
+    private final String source;
+    private long count;
+
+    /**
+     * @param in      输入流
+     * @param maxSize 最大字节数
+     * @param source  内容来源，用于异常信息
+     */
+    SizeLimitedInputStream(InputStream in, long maxSize, String source) {
+        super(in);
+        this.maxSize = maxSize;
+        this.source = source;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            afterRead(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            afterRead(n);
+        }
+        return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        afterRead(skipped);
+        return skipped;
+    }
+
+    private void afterRead(long n) throws IOException {
+        this.count += n;
+        if (this.count > this.maxSize) {
+            throw new IOException("Content exceeds " + this.maxSize + " from " + this.source);
+        }
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+}
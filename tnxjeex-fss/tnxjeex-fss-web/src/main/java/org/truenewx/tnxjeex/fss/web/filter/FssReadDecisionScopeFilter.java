@@ -0,0 +1,28 @@
+package org.truenewx.tnxjeex.fss.web.filter;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.truenewx.tnxjeex.fss.service.FssReadDecisionScope;
+
+/**
+ * 文件存储读权限判定作用域过滤器，使一次请求内相同的读权限判定只进行一次，如渲染包含大量文件的页面时
+ *
+ * @author jianglei
+ */
+public class FssReadDecisionScopeFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        try (FssReadDecisionScope scope = FssReadDecisionScope.open()) {
+            chain.doFilter(request, response);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package org.truenewx.tnxjeex.fss.web.tag;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.PageContext;
+import javax.servlet.jsp.tagext.SimpleTagSupport;
+
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.truenewx.tnxjee.service.exception.BusinessException;
+import org.truenewx.tnxjeex.fss.api.FssMetaResolver;
+
+/**
+ * 预取读取地址标签，一次性批量获取页面中将要输出的多个读取地址，之后的读取地址标签直接使用预取结果
+ *
+ * @author jianglei
+ */
+public class FssPrefetchReadUrlsTag extends SimpleTagSupport {
+
+    private Object value;
+    private boolean thumbnail;
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * @param value 内部存储地址集，可以是集合或数组
+     */
+    public void setValue(Object value) {
+        this.value = value;
+    }
+
+    public void setThumbnail(boolean thumbnail) {
+        this.thumbnail = thumbnail;
+    }
+
+    @Override
+    public void doTag() throws JspException, IOException {
+        PageContext pageContext = (PageContext) getJspContext();
+        Map<String, String> readUrls = FssReadUrlTagSupport.getReadUrls(pageContext, this.thumbnail);
+        // 只获取尚未获取过的
+        List<String> storageUrls = new ArrayList<>();
+        for (Object storageUrl : toCollection(this.value)) {
+            if (storageUrl != null) {
+                String url = storageUrl.toString();
+                if (StringUtils.isNotBlank(url) && !readUrls.containsKey(url) && !storageUrls.contains(url)) {
+                    storageUrls.add(url);
+                }
+            }
+        }
+        if (storageUrls.size() > 0) {
+            FssMetaResolver metaResolver = FssReadUrlTagSupport.getMetaResolver(pageContext);
+            if (metaResolver != null) {
+                try {
+                    String[] urls = metaResolver.resolveReadUrls(storageUrls.toArray(new String[0]), this.thumbnail);
+                    for (int i = 0; i < urls.length; i++) {
+                        readUrls.put(storageUrls.get(i), urls[i]);
+                    }
+                } catch (BusinessException e) { // 预取失败时，由读取地址标签逐个获取
+                    this.logger.error(e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private Collection<?> toCollection(Object value) {
+        if (value instanceof Collection) {
+            return (Collection<?>) value;
+        }
+        List<Object> list = new ArrayList<>();
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                list.add(element);
+            }
+        } else if (value != null) {
+            list.add(value);
+        }
+        return list;
+    }
+
+}
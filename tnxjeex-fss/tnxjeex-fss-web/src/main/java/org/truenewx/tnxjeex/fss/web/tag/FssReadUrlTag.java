@@ -1,8 +1,8 @@
 package org.truenewx.tnxjeex.fss.web.tag;
 
 import java.io.IOException;
+import java.util.Map;
 
-import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.JspException;
 import javax.servlet.jsp.JspWriter;
 import javax.servlet.jsp.PageContext;
@@ -10,10 +10,7 @@ import javax.servlet.jsp.tagext.SimpleTagSupport;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.context.ApplicationContext;
-import org.truenewx.tnxjee.core.util.SpringUtil;
 import org.truenewx.tnxjee.service.exception.BusinessException;
-import org.truenewx.tnxjee.webmvc.util.SpringWebMvcUtil;
 import org.truenewx.tnxjeex.fss.api.FssMetaResolver;
 
 /**
@@ -35,30 +32,27 @@ public class FssReadUrlTag extends SimpleTagSupport {
         this.thumbnail = thumbnail;
     }
 
-    private FssMetaResolver getReadUrlResolver() {
-        PageContext pageContext = (PageContext) getJspContext();
-        HttpServletRequest request = (HttpServletRequest) pageContext.getRequest();
-        ApplicationContext context = SpringWebMvcUtil.getApplicationContext(request);
-        if (context != null) {
-            return SpringUtil.getFirstBeanByClass(context, FssMetaResolver.class);
-        }
-        return null;
-    }
-
     @Override
     public void doTag() throws JspException, IOException {
-        FssMetaResolver metaResolver = getReadUrlResolver();
-        if (metaResolver != null) {
-            try {
-                String readUrl = metaResolver.resolveReadUrl(this.value, this.thumbnail);
-                if (readUrl != null) {
-                    JspWriter out = getJspContext().getOut();
-                    out.print(readUrl);
+        PageContext pageContext = (PageContext) getJspContext();
+        // 优先使用当前请求中已预取或已获取过的读取地址
+        Map<String, String> readUrls = FssReadUrlTagSupport.getReadUrls(pageContext, this.thumbnail);
+        String readUrl = readUrls.get(this.value);
+        if (readUrl == null && !readUrls.containsKey(this.value)) {
+            FssMetaResolver metaResolver = FssReadUrlTagSupport.getMetaResolver(pageContext);
+            if (metaResolver != null) {
+                try {
+                    readUrl = metaResolver.resolveReadUrl(this.value, this.thumbnail);
+                    readUrls.put(this.value, readUrl);
+                } catch (BusinessException e) {
+                    this.logger.error(e.getMessage(), e);
                 }
-            } catch (BusinessException e) {
-                this.logger.error(e.getMessage(), e);
             }
         }
+        if (readUrl != null) {
+            JspWriter out = getJspContext().getOut();
+            out.print(readUrl);
+        }
     }
 
 }
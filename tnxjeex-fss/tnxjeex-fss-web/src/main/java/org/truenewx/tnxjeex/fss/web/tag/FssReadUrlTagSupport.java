@@ -0,0 +1,63 @@
+package org.truenewx.tnxjeex.fss.web.tag;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.jsp.PageContext;
+
+import org.springframework.context.ApplicationContext;
+import org.truenewx.tnxjee.core.util.SpringUtil;
+import org.truenewx.tnxjee.webmvc.util.SpringWebMvcUtil;
+import org.truenewx.tnxjeex.fss.api.FssMetaResolver;
+
+/**
+ * 读取地址标签的支持，缓存元数据解决器，并在请求范围内缓存已获取的读取地址
+ *
+ * @author jianglei
+ */
+class FssReadUrlTagSupport {
+
+    private static final String RESOLVER_ATTRIBUTE = FssMetaResolver.class.getName();
+    private static final String READ_URLS_ATTRIBUTE = FssReadUrlTagSupport.class.getName() + ".readUrls";
+
+    private FssReadUrlTagSupport() {
+    }
+
+    /**
+     * 获取元数据解决器，首次获取后缓存在Servlet上下文中，以免每次渲染标签都查找Bean
+     */
+    static FssMetaResolver getMetaResolver(PageContext pageContext) {
+        ServletContext servletContext = pageContext.getServletContext();
+        FssMetaResolver metaResolver = (FssMetaResolver) servletContext.getAttribute(RESOLVER_ATTRIBUTE);
+        if (metaResolver == null) {
+            HttpServletRequest request = (HttpServletRequest) pageContext.getRequest();
+            ApplicationContext context = SpringWebMvcUtil.getApplicationContext(request);
+            if (context != null) {
+                metaResolver = SpringUtil.getFirstBeanByClass(context, FssMetaResolver.class);
+                if (metaResolver != null) {
+                    servletContext.setAttribute(RESOLVER_ATTRIBUTE, metaResolver);
+                }
+            }
+        }
+        return metaResolver;
+    }
+
+    /**
+     * 获取当前请求中已获取的存储地址-读取地址的映射集
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, String> getReadUrls(PageContext pageContext, boolean thumbnail) {
+        ServletRequest request = pageContext.getRequest();
+        String attributeName = READ_URLS_ATTRIBUTE + (thumbnail ? ".thumbnail" : "");
+        Map<String, String> readUrls = (Map<String, String>) request.getAttribute(attributeName);
+        if (readUrls == null) {
+            readUrls = new HashMap<>();
+            request.setAttribute(attributeName, readUrls);
+        }
+        return readUrls;
+    }
+
+}
@@ -0,0 +1,122 @@
+package org.truenewx.tnxjeex.notice.service.sms;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.truenewx.tnxjeex.notice.service.sms.content.SmsContentSender;
+
+/**
+ * 基于内存的短信发送间隔限制器，线程安全，为默认的限制器，仅在当前JVM内有效。
+ * 以内容发送器标识（见{@link SmsIntervalLimiter#getSenderKey(SmsContentSender)}）的序号和手机号码数值组合成的长整数为键，
+ * 记录的时限按到期时间分桶，到期后整桶清除，使记录数不随发送量无限增长
+ *
+ * @author jianglei
+ */
+public class MemorySmsIntervalLimiter implements SmsIntervalLimiter {
+
+    private static final long BUCKET_MILLIS = 1000;
+    private static final int CELLPHONE_BITS = 40; // 手机号码最多12位数字，可用40位表示
+    private static final int MAX_CELLPHONE_LENGTH = 12;
+
+    private final Map<String, Integer> senderNos = new ConcurrentHashMap<>(); // 内容发送器标识-序号的映射集
+    private final AtomicInteger senderNoSequence = new AtomicInteger();
+    private final Map<Long, Long> sendableTimes = new ConcurrentHashMap<>(); // 键-可发送时刻毫秒数的映射集
+    private final ConcurrentSkipListMap<Long, Queue<Long>> expiringBuckets = new ConcurrentSkipListMap<>();
+    private final AtomicLong purgedBucket = new AtomicLong();
+
+    /**
+     * 获取键，手机号码不是纯数字时返回null，此时不做限制
+     */
+    private Long getKey(SmsContentSender contentSender, String cellphone) {
+        int length = cellphone.length();
+        if (length == 0 || length > MAX_CELLPHONE_LENGTH) {
+            return null;
+        }
+        long no = 0;
+        for (int i = 0; i < length; i++) {
+            char c = cellphone.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+            no = no * 10 + (c - '0');
+        }
+        int senderNo = this.senderNos.computeIfAbsent(SmsIntervalLimiter.getSenderKey(contentSender),
+                senderKey -> this.senderNoSequence.getAndIncrement());
+        return ((long) senderNo << CELLPHONE_BITS) | no;
+    }
+
+    @Override
+    public int getRemainingSeconds(SmsContentSender contentSender, String cellphone) {
+        Long key = getKey(contentSender, cellphone);
+        if (key == null) {
+            return 0;
+        }
+        Long sendableTime = this.sendableTimes.get(key);
+        return sendableTime == null ? 0 : toSeconds(sendableTime - System.currentTimeMillis());
+    }
+
+    private int toSeconds(long millis) {
+        if (millis <= 0) {
+            return 0;
+        }
+        return (int) (millis / 1000 + (millis % 1000 == 0 ? 0 : 1));
+    }
+
+    @Override
+    public int tryAcquire(SmsContentSender contentSender, String cellphone) {
+        int intervalSeconds = contentSender.getIntervalSeconds();
+        Long key = getKey(contentSender, cellphone);
+        if (key == null || intervalSeconds <= 0) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        purgeExpired(now);
+        long sendableTime = now + intervalSeconds * 1000L;
+        long[] limitedTime = { 0 };
+        this.sendableTimes.compute(key, (k, existingTime) -> {
+            if (existingTime != null && existingTime > now) {
+                limitedTime[0] = existingTime;
+                return existingTime;
+            }
+            return sendableTime;
+        });
+        if (limitedTime[0] > 0) {
+            return toSeconds(limitedTime[0] - now);
+        }
+        this.expiringBuckets.computeIfAbsent(sendableTime / BUCKET_MILLIS, bucket -> new ConcurrentLinkedQueue<>())
+                .add(key);
+        return 0;
+    }
+
+    /**
+     * 清除已到期的桶中的记录，每个时间桶至多清除一次
+     */
+    private void purgeExpired(long now) {
+        long currentBucket = now / BUCKET_MILLIS;
+        long purged = this.purgedBucket.get();
+        if (currentBucket > purged && this.purgedBucket.compareAndSet(purged, currentBucket)) {
+            Map.Entry<Long, Queue<Long>> entry;
+            while ((entry = this.expiringBuckets.firstEntry()) != null && entry.getKey() < currentBucket) {
+                if (this.expiringBuckets.remove(entry.getKey(), entry.getValue())) {
+                    for (Long key : entry.getValue()) {
+                        // 到期后再次占用的，时限已延后，不能清除
+                        this.sendableTimes.computeIfPresent(key, (k, time) -> time <= now ? null : time);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return 当前记录的时限数
+     */
+    public int size() {
+        return this.sendableTimes.size();
+    }
+
+}
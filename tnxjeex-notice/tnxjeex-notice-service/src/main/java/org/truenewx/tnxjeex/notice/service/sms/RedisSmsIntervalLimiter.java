@@ -0,0 +1,67 @@
+package org.truenewx.tnxjeex.notice.service.sms;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.truenewx.tnxjeex.notice.service.sms.content.SmsContentSender;
+
+/**
+ * 基于Redis的短信发送间隔限制器，在共享同一Redis的全部节点间生效。
+ * 以带过期时间的SET NX占用发送时机，检查与占用为一个原子命令，时限到期后由Redis自动清除。
+ * 以{@link SmsIntervalLimiter#getSenderKey(SmsContentSender)}区分不同的内容发送器，与其它限制器的限制范围一致
+ *
+ * @author jianglei
+ */
+public class RedisSmsIntervalLimiter implements SmsIntervalLimiter {
+
+    private StringRedisTemplate redisTemplate;
+    private String keyPrefix = "tnxjeex:sms:interval:";
+
+    public RedisSmsIntervalLimiter(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    /**
+     * @param keyPrefix 键的前缀，默认为：tnxjeex:sms:interval:
+     */
+    public void setKeyPrefix(String keyPrefix) {
+        this.keyPrefix = keyPrefix;
+    }
+
+    private String getKey(SmsContentSender contentSender, String cellphone) {
+        return this.keyPrefix + SmsIntervalLimiter.getSenderKey(contentSender) + ":" + cellphone;
+    }
+
+    @Override
+    public int getRemainingSeconds(SmsContentSender contentSender, String cellphone) {
+        Long millis = this.redisTemplate.getExpire(getKey(contentSender, cellphone), TimeUnit.MILLISECONDS);
+        return millis == null ? 0 : toSeconds(millis);
+    }
+
+    private int toSeconds(long millis) {
+        if (millis <= 0) { // 键不存在或已过期
+            return 0;
+        }
+        return (int) (millis / 1000 + (millis % 1000 == 0 ? 0 : 1));
+    }
+
+    @Override
+    public int tryAcquire(SmsContentSender contentSender, String cellphone) {
+        int intervalSeconds = contentSender.getIntervalSeconds();
+        if (intervalSeconds <= 0) {
+            return 0;
+        }
+        String key = getKey(contentSender, cellphone);
+        long sendableTime = System.currentTimeMillis() + intervalSeconds * 1000L;
+        Boolean acquired = this.redisTemplate.opsForValue()
+                .setIfAbsent(key, String.valueOf(sendableTime), Duration.ofSeconds(intervalSeconds));
+        if (Boolean.TRUE.equals(acquired)) {
+            return 0;
+        }
+        // 占用失败后键可能恰好过期，此时仍视为未占用，剩余秒数至少为1
+        Long millis = this.redisTemplate.getExpire(key, TimeUnit.MILLISECONDS);
+        return Math.max(1, millis == null ? 0 : toSeconds(millis));
+    }
+
+}
@@ -0,0 +1,53 @@
+package org.truenewx.tnxjeex.notice.service.sms;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.springframework.util.ClassUtils;
+import org.truenewx.tnxjee.core.Strings;
+import org.truenewx.tnxjeex.notice.service.sms.content.SmsContentSender;
+
+/**
+ * 短信发送间隔限制器，限制给同一个手机号码发送短信的间隔时间。
+ * 未提供时使用{@link MemorySmsIntervalLimiter}，多节点部署时应提供基于共享存储的实现，如：{@link RedisSmsIntervalLimiter}
+ *
+ * @author jianglei
+ */
+public interface SmsIntervalLimiter {
+
+    /**
+     * 获取指定手机号码再次发送的剩余秒数
+     *
+     * @param contentSender 内容发送器
+     * @param cellphone     手机号码
+     * @return 剩余秒数，可发送时为0
+     */
+    int getRemainingSeconds(SmsContentSender contentSender, String cellphone);
+
+    /**
+     * 尝试占用指定手机号码的发送时机，时长为内容发送器的间隔时间。检查与占用须为原子操作，以免并发请求均通过检查
+     *
+     * @param contentSender 内容发送器
+     * @param cellphone     手机号码
+     * @return 剩余秒数，为0表示占用成功，可以发送
+     */
+    int tryAcquire(SmsContentSender contentSender, String cellphone);
+
+    /**
+     * 获取内容发送器的标识，各限制器以此区分不同的内容发送器，使限制范围一致。
+     * 以排序后的业务类型集合为标识，与实例及代理无关，在各节点间一致；未配置业务类型时以类名为标识
+     *
+     * @param contentSender 内容发送器
+     * @return 内容发送器的标识
+     */
+    static String getSenderKey(SmsContentSender contentSender) {
+        String[] types = contentSender.getTypes();
+        if (ArrayUtils.isEmpty(types)) {
+            return ClassUtils.getUserClass(contentSender).getSimpleName();
+        }
+        types = types.clone();
+        Arrays.sort(types);
+        return String.join(Strings.COMMA, types);
+    }
+
+}
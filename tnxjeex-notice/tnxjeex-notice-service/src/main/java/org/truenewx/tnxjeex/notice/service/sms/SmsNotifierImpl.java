@@ -1,6 +1,5 @@
 package org.truenewx.tnxjeex.notice.service.sms;
 
-import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.Executor;
 import java.util.function.Consumer;
@@ -28,7 +27,7 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
 
     private Map<String, SmsContentProvider> contentProviders = new HashMap<>();
     private Map<String, SmsContentSender> contentSenders = new HashMap<>();
-    private Map<String, Instant> sendableInstants = new HashMap<>(); // 可发送的时刻映射集
+    private SmsIntervalLimiter intervalLimiter;
     @Autowired
     private MessageSource messageSource;
     @Autowired
@@ -55,6 +54,10 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
                 });
             }
         });
+
+        // 未提供限制器时使用基于内存的限制器，仅在当前JVM内有效
+        this.intervalLimiter = context.getBeanProvider(SmsIntervalLimiter.class)
+                .getIfUnique(MemorySmsIntervalLimiter::new);
     }
 
     private SmsContentProvider getContentProvider(String type) {
@@ -81,7 +84,7 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
             if (content != null) {
                 SmsContentSender contentSender = getContentSender(type);
                 if (contentSender != null) {
-                    // 检查获取因时限不可发送的手机号码
+                    // 检查获取因时限不可发送的手机号码，可发送的同时占用发送时机
                     List<String> notCellphones = new ArrayList<>();
                     List<String> unsendableCellphones = new ArrayList<>();
                     if (cellphones.length == 1) { // 只有一个手机号码的，快速处理
@@ -89,7 +92,7 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
                         if (!StringUtil.isCellphone(cellphone)) {
                             notCellphones.add(cellphone);
                             cellphones = new String[0];
-                        } else if (getRemainingSeconds(contentSender, cellphone) > 0) {
+                        } else if (this.intervalLimiter.tryAcquire(contentSender, cellphone) > 0) {
                             unsendableCellphones.add(cellphone);
                             cellphones = new String[0];
                         }
@@ -98,7 +101,7 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
                         for (String cellphone : cellphones) {
                             if (!StringUtil.isCellphone(cellphone)) {
                                 notCellphones.add(cellphone);
-                            } else if (getRemainingSeconds(contentSender, cellphone) > 0) {
+                            } else if (this.intervalLimiter.tryAcquire(contentSender, cellphone) > 0) {
                                 unsendableCellphones.add(cellphone);
                             } else {
                                 sendableCellphones.add(cellphone);
@@ -113,7 +116,6 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
                     int maxCount = contentProvider.getMaxCount();
                     SmsNotifyResult result = contentSender
                             .send(signName, content, maxCount, this.disabled ? new String[0] : cellphones);
-                    putSendableInstants(contentSender, cellphones);
                     // 添加不是手机号码的错误
                     notCellphones.forEach(cellphone -> {
                         Object[] args = { cellphone };
@@ -123,7 +125,7 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
                     });
                     // 添加因时限不能发送的错误
                     unsendableCellphones.forEach(cellphone -> {
-                        Object[] args = { getRemainingSeconds(contentSender, cellphone) };
+                        Object[] args = { this.intervalLimiter.getRemainingSeconds(contentSender, cellphone) };
                         String errorMessage = this.messageSource
                                 .getMessage("error.notice.sms.interval_limited", args, locale);
                         result.addFailures(errorMessage, cellphone);
@@ -135,30 +137,6 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
         return null;
     }
 
-    private int getRemainingSeconds(SmsContentSender contentSender, String cellphone) {
-        String key = contentSender.toString() + Strings.MINUS + cellphone;
-        Instant instant = this.sendableInstants.get(key);
-        if (instant == null) { // 没有约束，剩余时间为0
-            return 0;
-        }
-        // 计算限定时间与当前时间的秒数差
-        long millis = instant.toEpochMilli() - System.currentTimeMillis();
-        if (millis <= 0) { // 约束时间已过，则从缓存移除
-            this.sendableInstants.remove(key);
-            return 0;
-        }
-        return (int) (millis / 1000 + (millis % 1000 == 0 ? 0 : 1));
-    }
-
-    private void putSendableInstants(SmsContentSender contentSender, String... cellphones) {
-        String prefix = contentSender.toString() + Strings.MINUS;
-        Instant instant = Instant.now().plusSeconds(contentSender.getIntervalSeconds());
-        for (String cellphone : cellphones) {
-            String key = prefix + cellphone;
-            this.sendableInstants.put(key, instant);
-        }
-    }
-
     @Override
     public void notify(String type, Map<String, Object> params, Locale locale, String[] cellphones,
             Consumer<SmsNotifyResult> callback) {
@@ -172,7 +150,7 @@ public class SmsNotifierImpl implements SmsNotifier, ContextInitializedBean {
     public int getRemainingSeconds(String type, String cellphone) {
         SmsContentSender contentSender = getContentSender(type);
         if (contentSender != null) {
-            return getRemainingSeconds(contentSender, cellphone);
+            return this.intervalLimiter.getRemainingSeconds(contentSender, cellphone);
         }
         return -1;
     }